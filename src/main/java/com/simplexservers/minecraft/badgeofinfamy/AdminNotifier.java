@@ -0,0 +1,109 @@
+package com.simplexservers.minecraft.badgeofinfamy;
+
+import com.simplexservers.minecraft.badgeofinfamy.commands.GeneralCommands;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the set of online admins subscribed to punishment notifications, so notifying them does not check the
+ * permission of every online player. The set is updated when players join, leave or change worlds, and rechecked
+ * periodically to pick up permission changes made by other plugins. Only used from the server thread.
+ */
+public class AdminNotifier {
+
+	/**
+	 * The permission to receive punishment notifications.
+	 */
+	public static final String NOTIFICATIONS_PERMISSION = GeneralCommands.BASE_PERMISSION + ".admin.notifications";
+	/**
+	 * The interval in ticks between rechecking the permissions of the online players.
+	 */
+	private static final long RECHECK_INTERVAL = 60 * 20L;
+
+	/**
+	 * The online subscribers by UUID.
+	 */
+	private static final Map<UUID, Player> subscribers = new HashMap<>();
+	/**
+	 * The repeating task rechecking the permissions. null if not started.
+	 */
+	private static BukkitTask recheckTask = null;
+
+	/**
+	 * Subscribes the online players with the permission and starts rechecking them periodically.
+	 */
+	public static void start() {
+		recheckAll();
+
+		if (recheckTask == null) {
+			recheckTask = new BukkitRunnable() {
+				@Override
+				public void run() {
+					recheckAll();
+				}
+			}.runTaskTimer(Main.getInstance(), RECHECK_INTERVAL, RECHECK_INTERVAL);
+		}
+	}
+
+	/**
+	 * Stops rechecking the permissions.
+	 */
+	public static void stop() {
+		if (recheckTask != null) {
+			recheckTask.cancel();
+			recheckTask = null;
+		}
+	}
+
+	/**
+	 * Subscribes or unsubscribes the player based on their current permissions.
+	 *
+	 * @param player The online player to check.
+	 */
+	public static void update(Player player) {
+		if (player.isOnline() && player.hasPermission(NOTIFICATIONS_PERMISSION)) {
+			subscribers.put(player.getUniqueId(), player);
+		} else {
+			subscribers.remove(player.getUniqueId());
+		}
+	}
+
+	/**
+	 * Unsubscribes the player, once they leave.
+	 *
+	 * @param uuid The UUID of the player.
+	 */
+	public static void remove(UUID uuid) {
+		subscribers.remove(uuid);
+	}
+
+	/**
+	 * Rebuilds the subscribers from the permissions of every online player.
+	 */
+	public static void recheckAll() {
+		subscribers.clear();
+		for (Player player : Bukkit.getOnlinePlayers()) {
+			update(player);
+		}
+	}
+
+	/**
+	 * Sends the message to every subscribed admin.
+	 *
+	 * @param message The message to send.
+	 */
+	public static void notifyAdmins(String message) {
+		subscribers.values().forEach(admin -> admin.sendMessage(message));
+	}
+
+	public static int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+}
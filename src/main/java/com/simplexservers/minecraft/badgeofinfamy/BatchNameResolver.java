@@ -0,0 +1,128 @@
+package com.simplexservers.minecraft.badgeofinfamy;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the usernames of many players at once off the server thread, on top of the plugin's NameResolver.
+ * Resolved names are remembered, so the punished players and their voters only go to the name cache once.
+ * The resolver IS thread-safe.
+ */
+public class BatchNameResolver {
+
+	/**
+	 * The usernames resolved so far.
+	 */
+	private static final ConcurrentHashMap<UUID, String> usernames = new ConcurrentHashMap<>();
+
+	/**
+	 * Resolves the usernames of the players in one background task.
+	 * The future is completed on the server thread.
+	 *
+	 * @param uuids The UUID's of the players.
+	 * @return The future username of each player.
+	 */
+	public static CompletableFuture<Map<UUID, String>> resolveAll(Collection<UUID> uuids) {
+		Map<UUID, String> resolved = new HashMap<>();
+		List<UUID> missing = new ArrayList<>();
+		for (UUID uuid : new HashSet<>(uuids)) {
+			String username = usernames.get(uuid);
+			if (username != null) {
+				resolved.put(uuid, username);
+			} else {
+				missing.add(uuid);
+			}
+		}
+
+		if (missing.isEmpty()) {
+			return CompletableFuture.completedFuture(resolved);
+		}
+
+		CompletableFuture<Map<UUID, String>> future = new CompletableFuture<>();
+		Bukkit.getScheduler().runTaskAsynchronously(Main.getInstance(), () -> {
+			Throwable error = null;
+			try {
+				resolveMissing(missing, resolved);
+			} catch (Throwable e) {
+				error = e;
+			}
+
+			Throwable resolveError = error;
+			Bukkit.getScheduler().runTask(Main.getInstance(), () -> {
+				if (resolveError != null) {
+					future.completeExceptionally(resolveError);
+				} else {
+					future.complete(resolved);
+				}
+			});
+		});
+
+		return future;
+	}
+
+	/**
+	 * Resolves the usernames of every punished player and their voters in the background, so admin commands do not
+	 * wait on them.
+	 */
+	public static void warm() {
+		Set<UUID> uuids = new HashSet<>();
+		PunishManager.getPunishedPlayers().forEach(punishedPlayer -> {
+			uuids.add(punishedPlayer.getPlayerUUID());
+			uuids.addAll(punishedPlayer.getVoters());
+		});
+
+		resolveAll(uuids).whenComplete((resolved, error) -> {
+			if (error == null) {
+				Main.getInstance().getLogger().info("Resolved " + resolved.size() + " punished player and voter names.");
+			}
+		});
+	}
+
+	/**
+	 * Gets the username of the player if it has already been resolved.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @return The username, or null if it has not been resolved.
+	 */
+	public static String getCached(UUID uuid) {
+		return usernames.get(uuid);
+	}
+
+	/**
+	 * Updates the remembered username of the player, who may have changed it since they last joined.
+	 *
+	 * @param player The player who joined.
+	 */
+	public static void update(Player player) {
+		usernames.replace(player.getUniqueId(), player.getName());
+	}
+
+	/**
+	 * Resolves the missing usernames through the plugin's NameResolver.
+	 *
+	 * @param missing The UUID's of the players not yet resolved.
+	 * @param resolved The usernames resolved so far, added to.
+	 */
+	private static void resolveMissing(List<UUID> missing, Map<UUID, String> resolved) {
+		// The name cache's schema belongs to BukkitUtils, so each name goes through its own lookup, all in this task
+		for (UUID uuid : missing) {
+			String username = Main.getInstance().getNameResolver().getUsername(uuid);
+			if (username != null) {
+				usernames.put(uuid, username);
+				resolved.put(uuid, username);
+			}
+		}
+	}
+
+}
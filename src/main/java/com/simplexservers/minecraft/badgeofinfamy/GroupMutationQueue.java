@@ -0,0 +1,553 @@
+package com.simplexservers.minecraft.badgeofinfamy;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Applies the group changes of punishments and pardons through the permissions hook off the server thread.
+ * The pending changes are saved before they are applied and retried with a growing delay until they succeed, so a
+ * failure or a restart does not leave a player in the wrong groups. A periodic reconciler checks that punished players hold the punished
+ * group and that pardoned players got their previous groups back, queueing any missing changes.
+ * The queue IS thread-safe.
+ */
+public class GroupMutationQueue {
+
+	/**
+	 * The file the pending changes are saved to.
+	 */
+	private static final File PENDING_FILE = new File(Main.getInstance().getDataFolder(), "pending_groups.json");
+	/**
+	 * The number of failed attempts after which a change is reported as failing.
+	 */
+	private static final int WARN_ATTEMPTS = 10;
+	/**
+	 * The interval in ticks between retrying failed changes.
+	 */
+	private static final long RETRY_INTERVAL = 20L;
+	/**
+	 * The delay in milliseconds before the first retry of a failed change, doubled after each failed attempt.
+	 */
+	private static final long RETRY_DELAY = 1000L;
+	/**
+	 * The longest delay in milliseconds between retries of a failed change.
+	 */
+	private static final long MAX_RETRY_DELAY = 5 * 60 * 1000L;
+	/**
+	 * The interval in ticks between reconciling the groups of punished and pardoned players.
+	 */
+	private static final long RECONCILE_INTERVAL = 5 * 60 * 20L;
+
+	/**
+	 * The changes waiting to be applied, in the order they were queued. Guarded by the class lock.
+	 */
+	private static final List<GroupChange> pending = new ArrayList<>();
+	/**
+	 * The previous groups of pardoned players, kept until the reconciler has verified they got them back. Guarded by
+	 * the class lock.
+	 */
+	private static final Map<UUID, String[]> pardoned = new HashMap<>();
+	/**
+	 * If the pending file is out of date. Guarded by the class lock.
+	 */
+	private static boolean dirty = false;
+	/**
+	 * If a background task to apply the pending changes is already scheduled. Guarded by the class lock.
+	 */
+	private static boolean processScheduled = false;
+	/**
+	 * Held while changes are being applied so only one thread applies them at a time.
+	 */
+	private static final Object processLock = new Object();
+
+	/**
+	 * The repeating task retrying failed changes. null if not started.
+	 */
+	private static BukkitTask retryTask = null;
+	/**
+	 * The repeating task reconciling the groups. null if not started.
+	 */
+	private static BukkitTask reconcileTask = null;
+
+	/**
+	 * The number of changes applied.
+	 */
+	private static final AtomicLong appliedCount = new AtomicLong();
+	/**
+	 * The number of failed attempts that were retried.
+	 */
+	private static final AtomicLong retryCount = new AtomicLong();
+	/**
+	 * The number of changes the reconciler queued.
+	 */
+	private static final AtomicLong repairCount = new AtomicLong();
+
+	/**
+	 * Queues the player to be added to the group.
+	 *
+	 * @param player The player.
+	 * @param group The group to add the player to.
+	 */
+	public static void addGroup(OfflinePlayer player, String group) {
+		submit(new GroupChange(player.getUniqueId(), group, true));
+	}
+
+	/**
+	 * Queues the player to be removed from the group.
+	 *
+	 * @param player The player.
+	 * @param group The group to remove the player from.
+	 */
+	public static void removeGroup(OfflinePlayer player, String group) {
+		submit(new GroupChange(player.getUniqueId(), group, false));
+	}
+
+	/**
+	 * Records that the pardoned player should be back in their previous groups, so the reconciler verifies it.
+	 *
+	 * @param playerUUID The UUID of the pardoned player.
+	 * @param previousGroups The groups the player had before they were punished.
+	 */
+	public static void expectRestored(UUID playerUUID, String[] previousGroups) {
+		synchronized (GroupMutationQueue.class) {
+			pardoned.put(playerUUID, previousGroups.clone());
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Fetches the groups of the player from the permissions hook off the server thread.
+	 *
+	 * @param player The player.
+	 * @return The future groups of the player.
+	 */
+	public static CompletableFuture<String[]> fetchGroups(OfflinePlayer player) {
+		CompletableFuture<String[]> future = new CompletableFuture<>();
+		Bukkit.getScheduler().runTaskAsynchronously(Main.getInstance(), () -> {
+			try {
+				String[] groups = Main.getInstance().getPermissionsHook().getPlayerGroups(null, player);
+				future.complete(groups != null ? groups : new String[0]);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * Loads the changes left pending by the last run and starts applying, retrying and reconciling changes.
+	 */
+	public static void start() {
+		load();
+
+		synchronized (GroupMutationQueue.class) {
+			if (retryTask != null) {
+				return;
+			}
+
+			retryTask = new BukkitRunnable() {
+				@Override
+				public void run() {
+					process();
+				}
+			}.runTaskTimerAsynchronously(Main.getInstance(), 0L, RETRY_INTERVAL);
+			reconcileTask = new BukkitRunnable() {
+				@Override
+				public void run() {
+					reconcile();
+				}
+			}.runTaskTimerAsynchronously(Main.getInstance(), RECONCILE_INTERVAL, RECONCILE_INTERVAL);
+		}
+	}
+
+	/**
+	 * Stops the background tasks and applies the remaining changes on the calling thread. Changes that still fail stay
+	 * saved for the next run.
+	 */
+	public static void stop() {
+		synchronized (GroupMutationQueue.class) {
+			if (retryTask != null) {
+				retryTask.cancel();
+				retryTask = null;
+			}
+			if (reconcileTask != null) {
+				reconcileTask.cancel();
+				reconcileTask = null;
+			}
+		}
+
+		process();
+	}
+
+	/**
+	 * Saves and applies the pending changes. A player's changes are applied in order, so a failed change holds back the
+	 * player's later changes until it succeeds.
+	 */
+	public static void process() {
+		synchronized (processLock) {
+			List<GroupChange> batch;
+			synchronized (GroupMutationQueue.class) {
+				processScheduled = false;
+				if (pending.isEmpty() && !dirty) {
+					return;
+				}
+
+				batch = new ArrayList<>(pending);
+			}
+
+			// Save the changes before applying them
+			save();
+
+			long now = System.currentTimeMillis();
+			Set<UUID> heldBack = new HashSet<>();
+			Set<GroupChange> finished = new HashSet<>();
+			for (GroupChange change : batch) {
+				if (heldBack.contains(change.playerUUID)) {
+					continue;
+				}
+				// Still waiting to be retried
+				if (change.nextAttempt > now) {
+					heldBack.add(change.playerUUID);
+					continue;
+				}
+
+				if (apply(change)) {
+					appliedCount.incrementAndGet();
+					finished.add(change);
+					onApplied(change.playerUUID);
+					continue;
+				}
+
+				change.attempts++;
+				change.nextAttempt = now + Math.min(RETRY_DELAY << Math.min(change.attempts - 1, 20), MAX_RETRY_DELAY);
+				if (change.attempts == WARN_ATTEMPTS) {
+					Main.getInstance().getLogger().severe("Could not " + (change.add ? "add " : "remove ") + change.playerUUID +
+							(change.add ? " to " : " from ") + "the group " + change.group + " after " + WARN_ATTEMPTS +
+							" attempts. It will keep being retried, holding back the player's later group changes.");
+				}
+				retryCount.incrementAndGet();
+				heldBack.add(change.playerUUID);
+			}
+
+			// The attempts are not saved, so only finished changes need a save
+			if (finished.isEmpty()) {
+				return;
+			}
+
+			synchronized (GroupMutationQueue.class) {
+				// Changes are compared by identity, since the same change can be queued twice
+				pending.removeAll(finished);
+				dirty = true;
+			}
+			save();
+		}
+	}
+
+	/**
+	 * Queues the changes missing from the groups of punished players and of pardoned players not yet verified.
+	 * A player can be punished or pardoned while their groups are checked, so each repair is only queued if the player
+	 * is still in the same state and has no changes pending.
+	 */
+	public static void reconcile() {
+		Set<UUID> busy = new HashSet<>();
+		Map<UUID, String[]> toVerify;
+		synchronized (GroupMutationQueue.class) {
+			pending.forEach(change -> busy.add(change.playerUUID));
+			toVerify = new HashMap<>(pardoned);
+		}
+
+		String punishedGroup = Main.getInstance().getPluginConfig().PUNISHED_GROUP;
+		try {
+			for (PunishedPlayer punishedPlayer : PunishManager.getPunishedPlayers()) {
+				if (busy.contains(punishedPlayer.getPlayerUUID())) {
+					continue;
+				}
+
+				OfflinePlayer player = Bukkit.getOfflinePlayer(punishedPlayer.getPlayerUUID());
+				if (!Main.getInstance().getPermissionsHook().playerInGroup(null, player, punishedGroup)) {
+					repair(Collections.singletonList(new GroupChange(player.getUniqueId(), punishedGroup, true)), true);
+				}
+			}
+
+			for (Map.Entry<UUID, String[]> entry : toVerify.entrySet()) {
+				UUID playerUUID = entry.getKey();
+				if (busy.contains(playerUUID)) {
+					continue;
+				}
+
+				// Punished again since, the punished players are checked above
+				boolean verified = PunishManager.getPunishedPlayer(playerUUID) != null;
+				if (!verified) {
+					List<GroupChange> repairs = new ArrayList<>();
+					OfflinePlayer player = Bukkit.getOfflinePlayer(playerUUID);
+					if (Main.getInstance().getPermissionsHook().playerInGroup(null, player, punishedGroup)) {
+						repairs.add(new GroupChange(playerUUID, punishedGroup, false));
+					}
+					for (String group : entry.getValue()) {
+						if (!Main.getInstance().getPermissionsHook().playerInGroup(null, player, group)) {
+							repairs.add(new GroupChange(playerUUID, group, true));
+						}
+					}
+					verified = repairs.isEmpty();
+					repair(repairs, false);
+				}
+
+				if (verified) {
+					synchronized (GroupMutationQueue.class) {
+						pardoned.remove(playerUUID, entry.getValue());
+						dirty = true;
+					}
+				}
+			}
+		} catch (Exception e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred reconciling the player groups.", e);
+		}
+	}
+
+	public static int getPendingCount() {
+		synchronized (GroupMutationQueue.class) {
+			return pending.size();
+		}
+	}
+
+	public static long getAppliedCount() {
+		return appliedCount.get();
+	}
+
+	public static long getRetryCount() {
+		return retryCount.get();
+	}
+
+	public static long getRepairCount() {
+		return repairCount.get();
+	}
+
+	/**
+	 * Queues the change and applies it in the background. Changes queued together are applied by the same task.
+	 *
+	 * @param change The change to queue.
+	 */
+	private static void submit(GroupChange change) {
+		synchronized (GroupMutationQueue.class) {
+			pending.add(change);
+			dirty = true;
+
+			// While disabling, the changes are applied by stop()
+			if (processScheduled || !Main.getInstance().isEnabled()) {
+				return;
+			}
+			processScheduled = true;
+		}
+
+		Bukkit.getScheduler().runTaskAsynchronously(Main.getInstance(), GroupMutationQueue::process);
+	}
+
+	/**
+	 * Queues the changes the reconciler found missing from a player's groups, unless the player was punished or
+	 * pardoned since their groups were checked. Checked under the lock so a punishment or pardon is either seen here or
+	 * queued after the repairs.
+	 *
+	 * @param changes The changes to queue, all for the same player.
+	 * @param punished true if the changes are for a punished player, false if they are for a pardoned player.
+	 */
+	private static void repair(List<GroupChange> changes, boolean punished) {
+		if (changes.isEmpty()) {
+			return;
+		}
+
+		UUID playerUUID = changes.get(0).playerUUID;
+		synchronized (GroupMutationQueue.class) {
+			if ((PunishManager.getPunishedPlayer(playerUUID) != null) != punished) {
+				return;
+			}
+			for (GroupChange change : pending) {
+				if (change.playerUUID.equals(playerUUID)) {
+					return;
+				}
+			}
+
+			changes.forEach(GroupMutationQueue::submit);
+			repairCount.addAndGet(changes.size());
+		}
+	}
+
+	/**
+	 * Rechecks the admin notification permission of the player once their groups changed, if they are online.
+	 *
+	 * @param playerUUID The UUID of the player.
+	 */
+	private static void onApplied(UUID playerUUID) {
+		if (!Main.getInstance().isEnabled()) {
+			return;
+		}
+
+		Bukkit.getScheduler().runTask(Main.getInstance(), () -> {
+			Player player = Bukkit.getPlayer(playerUUID);
+			if (player != null) {
+				AdminNotifier.update(player);
+			}
+		});
+	}
+
+	/**
+	 * Applies the change through the permissions hook.
+	 *
+	 * @param change The change to apply.
+	 * @return true if the change was applied, false if it failed.
+	 */
+	private static boolean apply(GroupChange change) {
+		try {
+			OfflinePlayer player = Bukkit.getOfflinePlayer(change.playerUUID);
+			if (change.add) {
+				return Main.getInstance().getPermissionsHook().playerAddGroup(null, player, change.group);
+			} else {
+				return Main.getInstance().getPermissionsHook().playerRemoveGroup(null, player, change.group);
+			}
+		} catch (Exception e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred changing the groups of " + change.playerUUID + ".", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Saves the pending changes and the pardoned players to verify, if they changed.
+	 */
+	private static void save() {
+		JSONObject json = new JSONObject();
+		synchronized (GroupMutationQueue.class) {
+			if (!dirty) {
+				return;
+			}
+
+			JSONArray changes = new JSONArray();
+			pending.forEach(change -> changes.add(change.serializeJSON()));
+			json.put("changes", changes);
+
+			JSONObject restored = new JSONObject();
+			pardoned.forEach((uuid, groups) -> {
+				JSONArray groupsArr = new JSONArray();
+				for (String group : groups) {
+					groupsArr.add(group);
+				}
+				restored.put(uuid.toString(), groupsArr);
+			});
+			json.put("pardoned", restored);
+			dirty = false;
+		}
+
+		File tempFile = new File(PENDING_FILE.getParentFile(), PENDING_FILE.getName() + ".tmp");
+		try {
+			try (FileWriter writer = new FileWriter(tempFile)) {
+				writer.write(json.toJSONString());
+			}
+			Files.move(tempFile.toPath(), PENDING_FILE.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "Could not save the pending group changes!", e);
+			synchronized (GroupMutationQueue.class) {
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Loads the changes and pardoned players left by the last run.
+	 */
+	private static void load() {
+		if (!PENDING_FILE.exists()) {
+			return;
+		}
+
+		JSONParser parser = new JSONParser();
+		try (FileReader reader = new FileReader(PENDING_FILE)) {
+			JSONObject json = (JSONObject) parser.parse(reader);
+
+			synchronized (GroupMutationQueue.class) {
+				for (Object change : (JSONArray) json.get("changes")) {
+					pending.add(GroupChange.deserializeJSON((JSONObject) change));
+				}
+
+				JSONObject restored = (JSONObject) json.get("pardoned");
+				for (Object key : restored.keySet()) {
+					JSONArray groupsArr = (JSONArray) restored.get(key);
+					String[] groups = new String[groupsArr.size()];
+					for (int i = 0; i < groupsArr.size(); i++) {
+						groups[i] = (String) groupsArr.get(i);
+					}
+					pardoned.put(UUID.fromString((String) key), groups);
+				}
+			}
+		} catch (Exception e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "Could not load the pending group changes!", e);
+			return;
+		}
+
+		if (!pending.isEmpty()) {
+			Main.getInstance().getLogger().info("Resuming " + pending.size() + " pending group changes.");
+		}
+	}
+
+	/**
+	 * A change to a player's groups.
+	 */
+	private static class GroupChange {
+
+		private final UUID playerUUID;
+		private final String group;
+		/**
+		 * true to add the player to the group, false to remove them from it.
+		 */
+		private final boolean add;
+		/**
+		 * The number of failed attempts to apply the change.
+		 */
+		private int attempts = 0;
+		/**
+		 * The epoch time in milliseconds before which the change is not retried.
+		 */
+		private long nextAttempt = 0;
+
+		private GroupChange(UUID playerUUID, String group, boolean add) {
+			this.playerUUID = playerUUID;
+			this.group = group;
+			this.add = add;
+		}
+
+		private JSONObject serializeJSON() {
+			JSONObject change = new JSONObject();
+			change.put("uuid", playerUUID.toString());
+			change.put("group", group);
+			change.put("add", add);
+			return change;
+		}
+
+		private static GroupChange deserializeJSON(JSONObject change) {
+			return new GroupChange(UUID.fromString((String) change.get("uuid")), (String) change.get("group"), (boolean) change.get("add"));
+		}
+
+	}
+
+}
@@ -3,9 +3,19 @@ package com.simplexservers.minecraft.badgeofinfamy;
 import com.simplexservers.minecraft.badgeofinfamy.commands.AdminCommands;
 import com.simplexservers.minecraft.badgeofinfamy.commands.GeneralCommands;
 import com.simplexservers.minecraft.badgeofinfamy.config.Config;
+import com.simplexservers.minecraft.badgeofinfamy.listeners.AdminNotifierListener;
+import com.simplexservers.minecraft.badgeofinfamy.listeners.PlayerSettingsListener;
 import com.simplexservers.minecraft.badgeofinfamy.listeners.PunishedPlayerListener;
+import com.simplexservers.minecraft.badgeofinfamy.listeners.StartupGateListener;
 import com.simplexservers.minecraft.badgeofinfamy.listeners.VoteListener;
-import com.simplexservers.minecraft.badgeofinfamy.votes.VoteNotificationTimer;
+import com.simplexservers.minecraft.badgeofinfamy.storage.HistoryStore;
+import com.simplexservers.minecraft.badgeofinfamy.storage.PunishJournal;
+import com.simplexservers.minecraft.badgeofinfamy.storage.PunishStore;
+import com.simplexservers.minecraft.badgeofinfamy.storage.SQLiteStore;
+import com.simplexservers.minecraft.badgeofinfamy.storage.SegmentedHistoryStore;
+import com.simplexservers.minecraft.badgeofinfamy.votes.NotificationFanOut;
+import com.simplexservers.minecraft.badgeofinfamy.votes.PunishmentDeadlines;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteQueue;
 import com.simplexservers.minecraft.bukkitutils.commands.BukkitCommandManager;
 import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUIListener;
 import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUIManager;
@@ -23,6 +33,11 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -54,6 +69,14 @@ public class Main extends JavaPlugin {
 	 * The manager to handle inventory GUI's.
 	 */
 	private InventoryGUIManager guiManager = new InventoryGUIManager();
+	/**
+	 * The store persisting the punished players.
+	 */
+	private PunishStore punishStore = null;
+	/**
+	 * The store persisting the punishment history.
+	 */
+	private HistoryStore historyStore = null;
 
 	@Override
 	public void onEnable() {
@@ -81,8 +104,14 @@ public class Main extends JavaPlugin {
 			return;
 		}
 
-		// Initialize the NameResolver's cache
-		nameResolver.initializeCache();
+		// Open the punishment storage
+		try {
+			openStorage();
+		} catch (IOException | SQLException e) {
+			getLogger().log(Level.SEVERE, "Could not open the punishment storage.", e);
+			Bukkit.getPluginManager().disablePlugin(this);
+			return;
+		}
 
 		// Register the InventoryGUI listener
 		Bukkit.getPluginManager().registerEvents(new InventoryGUIListener(this, guiManager), this);
@@ -91,6 +120,9 @@ public class Main extends JavaPlugin {
 		// Register the punish restrictions listener
 		Bukkit.getPluginManager().registerEvents(new PunishedPlayerListener(), this);
 		Bukkit.getPluginManager().registerEvents(new VoteListener(), this);
+		Bukkit.getPluginManager().registerEvents(new AdminNotifierListener(), this);
+		Bukkit.getPluginManager().registerEvents(new PlayerSettingsListener(), this);
+		Bukkit.getPluginManager().registerEvents(new StartupGateListener(), this);
 
 		// COMMANDS
 
@@ -102,21 +134,126 @@ public class Main extends JavaPlugin {
 		cmdManager.registerHandler(new GeneralCommands(cmdManager));
 		cmdManager.registerHandler(new AdminCommands(cmdManager));
 
-		// Load the cached players
-		PunishManager.loadCachedPlayers();
-		// Load player settings
-		PlayerSettings.loadPlayerSettings();
+		// Initialize the NameResolver's cache, which is not known to be safe off the server thread
+		long startTime = System.nanoTime();
+		nameResolver.initializeCache();
+		getLogger().info("Loaded the name cache in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms.");
+
+		// Resume the pending group changes
+		GroupMutationQueue.start();
+		// Start running punishment deadlines
+		PunishmentDeadlines.start();
 
-		// Start the vote notification interval
-		VoteNotificationTimer.scheduleNextNotification();
+		// Load the state in parallel while the server starts
+		ExecutorService loaders = Executors.newFixedThreadPool(2);
+		CompletableFuture.allOf(
+				loadPhase(loaders, "the punished players", PunishManager::loadCachedPlayers),
+				loadPhase(loaders, "the player settings", PlayerSettings::loadPlayerSettings)
+		).whenComplete((result, error) -> {
+			loaders.shutdown();
+			if (isEnabled()) {
+				Bukkit.getScheduler().runTask(this, () -> finishLoading(error, startTime));
+			}
+		});
+	}
+
+	/**
+	 * Runs a loader on the pool, logging how long it took.
+	 *
+	 * @param loaders The pool to run the loader on.
+	 * @param name The name of what is loaded used in log messages.
+	 * @param loader The loader.
+	 * @return The future completed once the loader has run.
+	 */
+	private CompletableFuture<Void> loadPhase(ExecutorService loaders, String name, Runnable loader) {
+		return CompletableFuture.runAsync(() -> {
+			long start = System.nanoTime();
+			try {
+				loader.run();
+			} catch (RuntimeException e) {
+				getLogger().log(Level.SEVERE, "Could not load " + name + ".", e);
+				throw e;
+			}
+			getLogger().info("Loaded " + name + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+		}, loaders);
+	}
+
+	/**
+	 * Starts the parts of the plugin depending on the loaded state and opens the startup gate.
+	 *
+	 * @param error The error that occurred loading the state, or null if it loaded.
+	 * @param startTime The System.nanoTime() loading started at.
+	 */
+	private void finishLoading(Throwable error, long startTime) {
+		if (error != null) {
+			// Fail closed, the gate stays shut until the plugin is disabled
+			Bukkit.getPluginManager().disablePlugin(this);
+			return;
+		}
+
+		// Load the settings of the players already online, which can only be listed on the server thread
+		PlayerSettings.loadOnlinePlayers();
+		// Index the punished players and schedule their deadlines
+		PunishManager.startTracking();
+		// Resolve the punished player and voter names in the background
+		BatchNameResolver.warm();
+
+		// Start processing queued votes
+		VoteQueue.start();
+		// Track the admins receiving punishment notifications
+		AdminNotifier.start();
+
+		StartupGate.markReady();
+		getLogger().info("Finished loading in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms.");
 	}
 
 	@Override
 	public void onDisable() {
+		// Count the votes still queued
+		VoteQueue.stop();
+		// Stop running punishment deadlines
+		PunishmentDeadlines.stop();
+		NotificationFanOut.stop();
+		AdminNotifier.stop();
+
+		// Save changed player settings
+		PlayerSettings.savePlayerSettings();
+		// Apply the remaining group changes
+		GroupMutationQueue.stop();
+
+		// Flush pending changes and close the punishment storage
+		if (punishStore != null) {
+			punishStore.close();
+		}
+		if (historyStore != null && historyStore != punishStore) {
+			historyStore.close();
+		}
+
 		// Close the NameResolver's cache
 		nameResolver.closeCache();
 	}
 
+	/**
+	 * Opens the punishment storage for the backend set in the config.
+	 *
+	 * @throws IOException If the punishment log segments could not be opened.
+	 * @throws SQLException If the SQLite database could not be opened.
+	 */
+	private void openStorage() throws IOException, SQLException {
+		PunishJournal journal = new PunishJournal(getDataFolder(), "punished_players");
+		SegmentedHistoryStore history = new SegmentedHistoryStore(new File(getDataFolder(), "history"), new File(getDataFolder(), "log"));
+
+		if (config.STORAGE_BACKEND.equalsIgnoreCase("sqlite")) {
+			SQLiteStore store = new SQLiteStore(new File(getDataFolder(), "punishments.db"), journal, history);
+			punishStore = store;
+			historyStore = store;
+		} else {
+			history.open();
+			punishStore = journal;
+			historyStore = history;
+		}
+	}
+
 	/**
 	 * Gets the singleton instance of the plugin that's loaded by Bukkit or null if one is not loaded.
 	 *
@@ -162,6 +299,24 @@ public class Main extends JavaPlugin {
 		return promptListener;
 	}
 
+	/**
+	 * Gets the store persisting the punished players.
+	 *
+	 * @return The punished player store.
+	 */
+	public PunishStore getPunishStore() {
+		return punishStore;
+	}
+
+	/**
+	 * Gets the store persisting the punishment history.
+	 *
+	 * @return The punishment history store.
+	 */
+	public HistoryStore getHistoryStore() {
+		return historyStore;
+	}
+
 	/**
 	 * Gets the hook into the Permissions management system.
 	 *
@@ -1,5 +1,8 @@
 package com.simplexservers.minecraft.badgeofinfamy;
 
+import com.simplexservers.minecraft.badgeofinfamy.storage.BinarySnapshot;
+import com.simplexservers.minecraft.badgeofinfamy.storage.UUIDLongMap;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.json.simple.JSONObject;
@@ -7,9 +10,11 @@ import org.json.simple.parser.JSONParser;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -17,122 +22,428 @@ import java.util.logging.Level;
 
 /**
  * The various settings each player can modify.
+ * Settings are packed into bit flags, where a cleared flag is the default. Only players with settings that differ from
+ * the default are stored, and their flags are only held in memory while they are online.
  */
 public class PlayerSettings {
 
-	private static final File SETTINGS_FILE = new File(Main.getInstance().getDataFolder(), "player_settings.json");
-	public static HashMap<UUID, PlayerSettings> playerSettings = new HashMap<>();
+	private static final File SETTINGS_FILE = new File(Main.getInstance().getDataFolder(), "player_settings.dat");
+	private static final File LEGACY_SETTINGS_FILE = new File(Main.getInstance().getDataFolder(), "player_settings.json");
 
 	/**
-	 * If the user should be shown vote notifications.
+	 * The flag set when the player has hidden vote notifications.
 	 */
-	private boolean showVoteNotification = true;
+	public static final long FLAG_HIDE_VOTE_NOTIFICATION = 1L;
 
 	/**
-	 * If the user should be shown vote notifications.
+	 * The lock guarding the in-memory settings. Never held during disk I/O.
+	 */
+	private static final Object settingsLock = new Object();
+	/**
+	 * The setting flags of the loaded players that differ from the default. Guarded by settingsLock.
+	 */
+	private static final UUIDLongMap loadedFlags = new UUIDLongMap();
+	/**
+	 * The setting flags of the players changed since the last save. Guarded by settingsLock.
+	 */
+	private static final UUIDLongMap dirtyFlags = new UUIDLongMap();
+	/**
+	 * The stored setting flags read by the load, kept until the players already online are loaded from them. null once
+	 * they are loaded. Guarded by settingsLock.
+	 */
+	private static UUIDLongMap startupFlags = null;
+	/**
+	 * If a save of the changed settings is scheduled. Guarded by settingsLock.
+	 */
+	private static boolean saveScheduled = false;
+	/**
+	 * The lock held while the settings file is read or written. Must be taken before settingsLock when both are needed.
+	 */
+	private static final Object fileLock = new Object();
+	/**
+	 * The record index of each player stored in the settings file. Guarded by fileLock.
+	 */
+	private static final UUIDLongMap recordSlots = new UUIDLongMap();
+	/**
+	 * The cleared record indexes that can be reused. Guarded by fileLock.
+	 */
+	private static final Deque<Integer> freeSlots = new ArrayDeque<>();
+	/**
+	 * The number of records in the settings file, including cleared records. Guarded by fileLock.
+	 */
+	private static int recordCount = 0;
+
+	/**
+	 * If the player should be shown vote notifications.
 	 *
+	 * @param uuid The UUID of the player.
 	 * @return true if notifications are enabled, false if disabled.
 	 */
-	public boolean showVoteNotification() {
-		return showVoteNotification;
+	public static boolean showVoteNotification(UUID uuid) {
+		return (getFlags(uuid) & FLAG_HIDE_VOTE_NOTIFICATION) == 0;
 	}
 
 	/**
 	 * Sets whether vote notifications should be shown to the player.
 	 * Saves player settings asynchronously.
 	 *
+	 * @param uuid The UUID of the player.
 	 * @param showVoteNotification Vote notification state.
 	 */
-	public void setShowVoteNotification(boolean showVoteNotification) {
-		setShowVoteNotification(showVoteNotification, true);
+	public static void setShowVoteNotification(UUID uuid, boolean showVoteNotification) {
+		synchronized (settingsLock) {
+			long flags = loadedFlags.get(uuid, 0L);
+			setFlags(uuid, showVoteNotification ? flags & ~FLAG_HIDE_VOTE_NOTIFICATION : flags | FLAG_HIDE_VOTE_NOTIFICATION);
+		}
 	}
 
 	/**
-	 * Sets whether vote notifications should be shown to the player.
+	 * Gets the setting flags of the loaded player.
 	 *
-	 * @param showVoteNotification Vote notification state.
-	 * @param save Whether to save the player settings asynchronously after changing the setting.
-	 */
-	public void setShowVoteNotification(boolean showVoteNotification, boolean save) {
-		this.showVoteNotification = showVoteNotification;
-		if (save) {
-			new BukkitRunnable() {
-				@Override
-				public void run() {
-					savePlayerSettings();
+	 * @param uuid The UUID of the player.
+	 * @return The setting flags, 0 if the player has the default settings or is not loaded.
+	 */
+	private static long getFlags(UUID uuid) {
+		synchronized (settingsLock) {
+			return loadedFlags.get(uuid, 0L);
+		}
+	}
+
+	/**
+	 * Sets the setting flags of the loaded player and schedules them to be saved. Must be called while holding
+	 * settingsLock.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @param flags The setting flags.
+	 */
+	private static void setFlags(UUID uuid, long flags) {
+		if (flags == 0L) {
+			loadedFlags.remove(uuid);
+		} else {
+			loadedFlags.put(uuid, flags);
+		}
+
+		markDirty(uuid, flags);
+	}
+
+	/**
+	 * Loads the stored settings of the player. Called before the player joins, off the server thread.
+	 *
+	 * @param uuid The UUID of the player to load.
+	 */
+	public static void loadPlayer(UUID uuid) {
+		synchronized (fileLock) {
+			synchronized (settingsLock) {
+				if (dirtyFlags.containsKey(uuid)) {
+					// The latest settings have not been saved yet
+					long flags = dirtyFlags.get(uuid, 0L);
+					if (flags != 0L) {
+						loadedFlags.put(uuid, flags);
+					}
+					return;
+				}
+			}
+
+			long slot = recordSlots.get(uuid, -1L);
+			if (slot == -1L) {
+				return;
+			}
+
+			long flags;
+			try {
+				flags = BinarySnapshot.readPlayerSettingsRecord(SETTINGS_FILE, (int) slot, uuid);
+			} catch (IOException e) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "Could not load the player settings!", e);
+				return;
+			}
+
+			if (flags != 0L) {
+				synchronized (settingsLock) {
+					loadedFlags.put(uuid, flags);
 				}
-			}.runTaskAsynchronously(Main.getInstance());
+			}
 		}
 	}
 
 	/**
-	 * Gets the PlayerSettings for the Bukkit player.
+	 * Drops the settings of the player from memory. Unsaved changes are kept until they are saved.
 	 *
-	 * @param player The player to get the settings for.
-	 * @return The settings for the player.
+	 * @param uuid The UUID of the player to unload.
 	 */
-	public static PlayerSettings getPlayerSettings(Player player) {
-		return getPlayerSettings(player.getUniqueId());
+	public static void unloadPlayer(UUID uuid) {
+		synchronized (settingsLock) {
+			loadedFlags.remove(uuid);
+		}
 	}
 
 	/**
-	 * Gets the PlayerSettings for the player with the given UUID.
-	 * Creates a new PlayerSettings if one doesn't not yet exist.
+	 * Serializes the stored settings of every player into a JSONObject keyed by UUID. The serialize function IS
+	 * thread-safe.
 	 *
-	 * @param uuid The UUID of the player to get the settings for.
-	 * @return The settings for the player.
+	 * @return The player settings serialized to a JSONObject.
 	 */
-	public static PlayerSettings getPlayerSettings(UUID uuid) {
-		synchronized (playerSettings) {
-			PlayerSettings settings = playerSettings.get(uuid);
+	public static JSONObject serializeJSON() {
+		UUIDLongMap flags = new UUIDLongMap();
 
-			// Create a new PlayerSettings if one doesn't exist
-			if (settings == null) {
-				settings = new PlayerSettings();
-				playerSettings.put(uuid, settings);
+		synchronized (fileLock) {
+			if (SETTINGS_FILE.exists()) {
+				try {
+					BinarySnapshot.readPlayerSettings(SETTINGS_FILE, flags, new UUIDLongMap());
+				} catch (IOException e) {
+					Main.getInstance().getLogger().log(Level.SEVERE, "Could not load the player settings!", e);
+				}
 			}
 
-			return settings;
+			synchronized (settingsLock) {
+				dirtyFlags.forEach(flags::put);
+			}
 		}
+
+		JSONObject players = new JSONObject();
+		flags.forEach((uuid, playerFlags) -> {
+			if (playerFlags == 0L) {
+				return;
+			}
+
+			JSONObject jsonSettings = new JSONObject();
+			jsonSettings.put("vote_notification", (playerFlags & FLAG_HIDE_VOTE_NOTIFICATION) == 0);
+
+			players.put(uuid.toString(), jsonSettings);
+		});
+
+		return players;
 	}
 
 	/**
-	 * Saves the player settings to the file. The save function IS thread-safe.
+	 * Marks the player's settings as changed and schedules a save if one is not already scheduled, so changes made
+	 * within the flush interval are written together. Must be called while holding settingsLock.
+	 *
+	 * @param uuid The UUID of the player whose settings changed.
+	 * @param flags The player's new setting flags.
+	 */
+	private static void markDirty(UUID uuid, long flags) {
+		dirtyFlags.put(uuid, flags);
+		if (saveScheduled) {
+			return;
+		}
+
+		saveScheduled = true;
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				savePlayerSettings();
+			}
+		}.runTaskLaterAsynchronously(Main.getInstance(), Main.getInstance().getPluginConfig().PERSISTENCE_FLUSH_INTERVAL * 20L);
+	}
+
+	/**
+	 * Saves the settings changed since the last save to the file. Only the records of changed players are written,
+	 * and players back at the default settings have their records cleared. The save function IS thread-safe.
 	 */
 	public static void savePlayerSettings() {
-		JSONObject players = new JSONObject();
+		synchronized (fileLock) {
+			// Take the changed settings without holding settingsLock during the write
+			UUID[] uuids;
+			long[] flags;
+			synchronized (settingsLock) {
+				saveScheduled = false;
+				if (dirtyFlags.isEmpty()) {
+					return;
+				}
 
-		synchronized (playerSettings) {
-			// Build the JSON object of player settings
-			for (Map.Entry<UUID, PlayerSettings> entry : playerSettings.entrySet()) {
-				PlayerSettings settings = entry.getValue();
+				uuids = new UUID[dirtyFlags.size()];
+				flags = new long[dirtyFlags.size()];
+				int[] index = { 0 };
+				dirtyFlags.forEach((uuid, playerFlags) -> {
+					uuids[index[0]] = uuid;
+					flags[index[0]] = playerFlags;
+					index[0]++;
+				});
+				dirtyFlags.clear();
+			}
 
-				JSONObject jsonSettings = new JSONObject();
-				jsonSettings.put("vote_notification", settings.showVoteNotification);
+			// Assign the record each change is written to. Cleared records are only freed once the write succeeds.
+			int writeCount = 0;
+			int[] slots = new int[uuids.length];
+			UUID[] recordUUIDs = new UUID[uuids.length];
+			long[] recordFlags = new long[uuids.length];
+			int assignedCount = 0;
+			UUID[] assignedUUIDs = new UUID[uuids.length];
+			boolean[] assignedFree = new boolean[uuids.length];
+			int clearedCount = 0;
+			UUID[] clearedUUIDs = new UUID[uuids.length];
+			for (int i = 0; i < uuids.length; i++) {
+				long slot = recordSlots.get(uuids[i], -1L);
 
-				players.put(entry.getKey().toString(), jsonSettings);
+				if (flags[i] == 0L) {
+					// Default settings are not stored
+					if (slot == -1L) {
+						continue;
+					}
+
+					recordUUIDs[writeCount] = null;
+					clearedUUIDs[clearedCount++] = uuids[i];
+				} else {
+					if (slot == -1L) {
+						assignedFree[assignedCount] = !freeSlots.isEmpty();
+						slot = freeSlots.isEmpty() ? recordCount++ : freeSlots.poll();
+						recordSlots.put(uuids[i], slot);
+						assignedUUIDs[assignedCount++] = uuids[i];
+					}
+
+					recordUUIDs[writeCount] = uuids[i];
+					recordFlags[writeCount] = flags[i];
+				}
+				slots[writeCount] = (int) slot;
+				writeCount++;
 			}
 
-			// Save the file
-			try (FileWriter writer = new FileWriter(SETTINGS_FILE)) {
-				players.writeJSONString(writer);
+			if (writeCount == 0) {
+				return;
+			}
+
+			try {
+				BinarySnapshot.writePlayerSettingsRecords(SETTINGS_FILE, recordCount, Arrays.copyOf(slots, writeCount),
+						Arrays.copyOf(recordUUIDs, writeCount), Arrays.copyOf(recordFlags, writeCount));
 			} catch (IOException e) {
 				Main.getInstance().getLogger().log(Level.SEVERE, "Could not save the player settings!", e);
+
+				// Give back the newly assigned records in reverse, so the record count and free records are as before
+				for (int i = assignedCount - 1; i >= 0; i--) {
+					int slot = (int) recordSlots.get(assignedUUIDs[i], -1L);
+					recordSlots.remove(assignedUUIDs[i]);
+					if (assignedFree[i]) {
+						freeSlots.addFirst(slot);
+					} else {
+						recordCount--;
+					}
+				}
+
+				// Retry the changes on the next save, unless they were changed again since
+				synchronized (settingsLock) {
+					for (int i = 0; i < uuids.length; i++) {
+						if (!dirtyFlags.containsKey(uuids[i])) {
+							markDirty(uuids[i], flags[i]);
+						}
+					}
+				}
+				return;
+			}
+
+			// The cleared records are no longer on disk and can be reused
+			for (int i = 0; i < clearedCount; i++) {
+				freeSlots.add((int) recordSlots.get(clearedUUIDs[i], -1L));
+				recordSlots.remove(clearedUUIDs[i]);
 			}
 		}
 	}
 
 	/**
-	 * Loads the player settings from the file. The load function IS thread-safe.
+	 * Loads the index of stored player settings from the file. The settings of the players already online are loaded
+	 * by loadOnlinePlayers() once this has run. Settings in the JSON format used before the binary format are migrated.
+	 * The load function IS thread-safe.
 	 */
 	public static void loadPlayerSettings() {
-		if (!SETTINGS_FILE.exists())
+		if (!SETTINGS_FILE.exists()) {
+			if (LEGACY_SETTINGS_FILE.exists()) {
+				loadLegacyPlayerSettings();
+			}
+			return;
+		}
+
+		synchronized (fileLock) {
+			UUIDLongMap flags = new UUIDLongMap();
+			try {
+				recordCount = BinarySnapshot.readPlayerSettings(SETTINGS_FILE, flags, recordSlots);
+			} catch (IOException e) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "Could not load the player settings!", e);
+				return;
+			}
+
+			// Records at the default settings are treated as cleared
+			Map<UUID, Long> storedFlags = new LinkedHashMap<>();
+			flags.forEach((uuid, playerFlags) -> {
+				if (playerFlags == 0L) {
+					recordSlots.remove(uuid);
+				} else {
+					storedFlags.put(uuid, playerFlags);
+				}
+			});
+
+			if (recordCount - recordSlots.size() > recordSlots.size()) {
+				// Most records are cleared, rewrite the file with only the stored players
+				compact(storedFlags);
+			} else {
+				boolean[] usedSlots = new boolean[recordCount];
+				recordSlots.forEach((uuid, slot) -> usedSlots[(int) slot] = true);
+				for (int slot = 0; slot < recordCount; slot++) {
+					if (!usedSlots[slot]) {
+						freeSlots.add(slot);
+					}
+				}
+			}
+
+			synchronized (settingsLock) {
+				startupFlags = flags;
+			}
+		}
+	}
+
+	/**
+	 * Loads the settings of the players online before the plugin was enabled, who did not go through the join.
+	 * Must be called on the server thread after loadPlayerSettings().
+	 */
+	public static void loadOnlinePlayers() {
+		synchronized (settingsLock) {
+			if (startupFlags == null) {
+				return;
+			}
+
+			for (Player player : Bukkit.getOnlinePlayers()) {
+				UUID uuid = player.getUniqueId();
+				// Changes made since the load are newer than the file
+				long flags = dirtyFlags.containsKey(uuid) ? dirtyFlags.get(uuid, 0L) : startupFlags.get(uuid, 0L);
+				if (flags != 0L) {
+					loadedFlags.put(uuid, flags);
+				}
+			}
+			startupFlags = null;
+		}
+	}
+
+	/**
+	 * Rewrites the settings file with a record for each of the players, dropping cleared records.
+	 * Must be called while holding fileLock.
+	 *
+	 * @param flags The setting flags of each stored player, in record order.
+	 */
+	private static void compact(Map<UUID, Long> flags) {
+		try {
+			BinarySnapshot.write(SETTINGS_FILE, BinarySnapshot.encodePlayerSettings(flags));
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "Could not compact the player settings!", e);
 			return;
+		}
+
+		recordSlots.clear();
+		freeSlots.clear();
+		for (UUID uuid : flags.keySet()) {
+			recordSlots.put(uuid, recordSlots.size());
+		}
+		recordCount = recordSlots.size();
+	}
+
+	/**
+	 * Loads the player settings from the JSON file and saves them in the binary format.
+	 */
+	private static void loadLegacyPlayerSettings() {
+		int migrated = 0;
+		UUIDLongMap flags = new UUIDLongMap();
 
-		synchronized (playerSettings) {
+		synchronized (settingsLock) {
 			// Load the file & parse
 			JSONParser parser = new JSONParser();
-			try (FileReader reader = new FileReader(SETTINGS_FILE)) {
+			try (FileReader reader = new FileReader(LEGACY_SETTINGS_FILE)) {
 				JSONObject players = (JSONObject) parser.parse(reader);
 
 				// Process the JSON data
@@ -140,15 +451,24 @@ public class PlayerSettings {
 					UUID uuid = UUID.fromString(entry.getKey());
 					JSONObject jsonSettings = entry.getValue();
 
-					PlayerSettings settings = new PlayerSettings();
-					settings.showVoteNotification = (boolean) jsonSettings.getOrDefault("vote_notification", settings.showVoteNotification);
-
-					playerSettings.put(uuid, settings);
+					boolean showVoteNotification = (boolean) jsonSettings.getOrDefault("vote_notification", true);
+					if (!showVoteNotification) {
+						flags.put(uuid, FLAG_HIDE_VOTE_NOTIFICATION);
+						dirtyFlags.put(uuid, FLAG_HIDE_VOTE_NOTIFICATION);
+						migrated++;
+					}
 				}
 			} catch (Exception e) {
 				Main.getInstance().getLogger().log(Level.SEVERE, "Could not load the player settings!", e);
+				return;
 			}
+
+			startupFlags = flags;
 		}
+
+		Main.getInstance().getLogger().info("Migrating " + migrated + " player settings from " +
+				LEGACY_SETTINGS_FILE.getName() + " to " + SETTINGS_FILE.getName() + ".");
+		savePlayerSettings();
 	}
 
 }
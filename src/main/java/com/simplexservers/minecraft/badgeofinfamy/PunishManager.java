@@ -1,28 +1,33 @@
 package com.simplexservers.minecraft.badgeofinfamy;
 
-import com.simplexservers.minecraft.badgeofinfamy.commands.GeneralCommands;
 import com.simplexservers.minecraft.badgeofinfamy.log.PunishLog;
-import com.simplexservers.minecraft.badgeofinfamy.votes.VoteGUI;
+import com.simplexservers.minecraft.badgeofinfamy.storage.PunishStore;
+import com.simplexservers.minecraft.badgeofinfamy.storage.WriteBehindQueue;
+import com.simplexservers.minecraft.badgeofinfamy.votes.OpenVoteView;
+import com.simplexservers.minecraft.badgeofinfamy.votes.PunishmentDeadlines;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteDeadlineIndex;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteGUISubscriptions;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteItemCache;
 import com.simplexservers.minecraft.badgeofinfamy.votes.VoteNotificationTimer;
-import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUI;
-import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUIEntry;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoterIndex;
 import com.simplexservers.minecraft.promptutils.ChatColor;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 
-import java.io.*;
 import java.util.*;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PunishManager {
 
-	private static final File PUNISHED_PLAYERS_FILE = new File(Main.getInstance().getDataFolder(), "punished_players.json");
-
-	private static HashMap<UUID, PunishedPlayer> punishedPlayers = new HashMap<>();
+	/**
+	 * The players under punishment. Only modified on the server thread, but read without locking from the async chat
+	 * threads.
+	 */
+	private static final ConcurrentHashMap<UUID, PunishedPlayer> punishedPlayers = new ConcurrentHashMap<>();
 
 	/**
 	 * Gets the PunishedPlayer from the Bukkit player object.
@@ -35,7 +40,7 @@ public class PunishManager {
 	}
 
 	/**
-	 * Gets the PunishedPlayer from the player's Minecraft UUID.
+	 * Gets the PunishedPlayer from the player's Minecraft UUID. Safe to call from any thread.
 	 *
 	 * @param playerUUID The Minecraft UUID of the player being punished.
 	 * @return The PunishedPlayer object or null if they are not under punishment.
@@ -53,110 +58,301 @@ public class PunishManager {
 		return new ArrayList<>(punishedPlayers.values());
 	}
 
+	/**
+	 * Waits in the background for the previous groups of the builders to be fetched, so punishing the players does not
+	 * wait on the permissions hook. The future is completed on the server thread.
+	 *
+	 * @param builders The builders of the players to punish.
+	 * @return The future completed once every player's groups are fetched, or exceptionally if any fetch failed.
+	 */
+	public static CompletableFuture<Void> fetchPreviousGroups(Collection<PunishedPlayer.PunishedPlayerBuilder> builders) {
+		CompletableFuture<?>[] fetches = builders.stream()
+				.map(PunishedPlayer.PunishedPlayerBuilder::getPreviousGroupsFuture)
+				.toArray(CompletableFuture<?>[]::new);
+
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		CompletableFuture.allOf(fetches).whenComplete((result, error) -> Bukkit.getScheduler().runTask(Main.getInstance(), () -> {
+			if (error != null) {
+				future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+			} else {
+				future.complete(null);
+			}
+		}));
+
+		return future;
+	}
+
 	// TODO Fix duplicates
 	public static PunishedPlayer punishPlayer(PunishedPlayer.PunishedPlayerBuilder builder) throws IllegalArgumentException {
-		PunishedPlayer punishedPlayer = builder.build();
+		PunishedPlayer punishedPlayer = applyPunishment(builder.build(), builder);
+		compactIfNeeded();
+
+		// Notify the vote timer
+		VoteNotificationTimer.scheduleNextNotification();
+
+		// Notify admins
+		String username = Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
+		String message = ChatColor.GOLD + username + ChatColor.YELLOW + " has just been punished for: " +
+				ChatColor.WHITE + punishedPlayer.getReason() + "\n" + ChatColor.YELLOW + "Use " + ChatColor.GOLD +
+				"/boi details " + username + ChatColor.YELLOW + " for additional information.";
+		AdminNotifier.notifyAdmins(message);
+		return punishedPlayer;
+	}
+
+	/**
+	 * Punishes every player the same way as the template, as one batch. The players' groups are fetched in the
+	 * background first, so the caller never waits on the permissions hook.
+	 *
+	 * @param template The builder with the punishment settings.
+	 * @param players The players to punish.
+	 * @return The future punished players, completed on the server thread. Completed exceptionally if any player's
+	 * groups could not be fetched or the template has invalid settings, in which case no one is punished.
+	 */
+	public static CompletableFuture<List<PunishedPlayer>> punishPlayers(PunishedPlayer.PunishedPlayerBuilder template, Collection<? extends OfflinePlayer> players) {
+		List<PunishedPlayer.PunishedPlayerBuilder> builders = new ArrayList<>();
+		for (OfflinePlayer player : players) {
+			PunishedPlayer.PunishedPlayerBuilder builder = new PunishedPlayer.PunishedPlayerBuilder(player);
+			builder.copySettings(template);
+			builders.add(builder);
+		}
+
+		return fetchPreviousGroups(builders).thenApply(result -> punishPlayers(builders));
+	}
+
+	/**
+	 * Punishes the players as one batch. Their changes are persisted together, their groups are changed by one
+	 * background task and the admins get a single summary.
+	 *
+	 * @param builders The builders of the players to punish.
+	 * @return The punished players.
+	 * @throws IllegalArgumentException If any builder has invalid settings, in which case no one is punished.
+	 */
+	public static List<PunishedPlayer> punishPlayers(Collection<PunishedPlayer.PunishedPlayerBuilder> builders) throws IllegalArgumentException {
+		// Build every player before punishing anyone
+		Map<PunishedPlayer.PunishedPlayerBuilder, PunishedPlayer> built = new LinkedHashMap<>();
+		for (PunishedPlayer.PunishedPlayerBuilder builder : builders) {
+			built.put(builder, builder.build());
+		}
+
+		List<PunishedPlayer> punished = new ArrayList<>();
+		built.forEach((builder, punishedPlayer) -> punished.add(applyPunishment(punishedPlayer, builder)));
+		if (punished.isEmpty()) {
+			return punished;
+		}
+
+		compactIfNeeded();
+		VoteNotificationTimer.scheduleNextNotification();
 
+		// Notify admins once
+		String message = ChatColor.GOLD + String.valueOf(punished.size()) + ChatColor.YELLOW + " players have just been punished: " +
+				ChatColor.WHITE + joinUsernames(punished);
+		if (punished.stream().map(PunishedPlayer::getReason).distinct().count() == 1) {
+			message += "\n" + ChatColor.YELLOW + "Reason: " + ChatColor.WHITE + punished.get(0).getReason();
+		}
+		AdminNotifier.notifyAdmins(message);
+		return punished;
+	}
+
+	/**
+	 * Punishes the player without notifying the admins or compacting the store.
+	 *
+	 * @param punishedPlayer The built punished player.
+	 * @param builder The builder the punished player was built from.
+	 * @return The punished player.
+	 */
+	private static PunishedPlayer applyPunishment(PunishedPlayer punishedPlayer, PunishedPlayer.PunishedPlayerBuilder builder) {
 		// Remove their previous groups
 		for (String group : builder.getPreviousGroups()) {
-			Main.getInstance().getPermissionsHook().playerRemoveGroup(null, builder.getPlayer(), group);
+			GroupMutationQueue.removeGroup(builder.getPlayer(), group);
 		}
 
 		// Set their restricted group
-		Main.getInstance().getPermissionsHook().playerAddGroup(null, builder.getPlayer(), Main.getInstance().getPluginConfig().PUNISHED_GROUP);
+		GroupMutationQueue.addGroup(builder.getPlayer(), Main.getInstance().getPluginConfig().PUNISHED_GROUP);
 
-		punishedPlayers.put(punishedPlayer.getPlayerUUID(), punishedPlayer);
-		saveCachedPlayers();
-
-		// Notify the vote timer
-		VoteNotificationTimer.scheduleNextNotification();
+		PunishedPlayer previous = punishedPlayers.put(punishedPlayer.getPlayerUUID(), punishedPlayer);
+		if (previous != null) {
+			VoteDeadlineIndex.remove(previous);
+			VoterIndex.remove(previous);
+		}
+		VoteDeadlineIndex.add(punishedPlayer);
+		PunishmentDeadlines.track(punishedPlayer);
+		VoteItemCache.invalidate(punishedPlayer.getPlayerUUID());
+		OpenVoteView.invalidate();
+		getStore().recordPunish(punishedPlayer);
 
 		// Log the punishment
 		PunishLog.logPunishment(punishedPlayer);
+		return punishedPlayer;
+	}
+
+	public static void freePlayer(OfflinePlayer player) {
+		PunishedPlayer punishedPlayer = applyFree(player);
+		if (punishedPlayer == null) {
+			return;
+		}
+		compactIfNeeded();
 
 		// Notify admins
 		String username = Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
-		String message = ChatColor.GOLD + username + ChatColor.YELLOW + " has just been punished for: " +
-				ChatColor.WHITE + punishedPlayer.getReason() + "\n" + ChatColor.YELLOW + "Use " + ChatColor.GOLD +
-				"/boi details " + username + ChatColor.YELLOW + " for additional information.";
-		Bukkit.getOnlinePlayers().stream()
-				.filter(player -> player.hasPermission(GeneralCommands.BASE_PERMISSION + ".admin.notifications"))
-				.forEach(admin -> admin.sendMessage(message));
-		return punishedPlayer;
+		String adminMessage = ChatColor.GOLD + username + ChatColor.YELLOW + " has just been pardoned with " +
+				punishedPlayer.getCurrentVotes() + " votes.";
+		AdminNotifier.notifyAdmins(adminMessage);
+
+		// Notify online voters
+		String message = ChatColor.YELLOW + "A player you've voted for, " + username + ", has just been pardoned.";
+		VoterIndex.remove(punishedPlayer).forEach(voter -> voter.sendMessage(message));
 	}
 
-	public static void freePlayer(OfflinePlayer player) {
+	/**
+	 * Frees the players as one batch. Their changes are persisted together, their groups are changed by one background
+	 * task, the admins get a single summary and each online voter gets a single message.
+	 *
+	 * @param players The players to free.
+	 * @return The players that were punished and have been freed.
+	 */
+	public static List<PunishedPlayer> freePlayers(Collection<? extends OfflinePlayer> players) {
+		List<PunishedPlayer> freed = new ArrayList<>();
+		for (OfflinePlayer player : players) {
+			PunishedPlayer punishedPlayer = applyFree(player);
+			if (punishedPlayer != null) {
+				freed.add(punishedPlayer);
+			}
+		}
+		if (freed.isEmpty()) {
+			return freed;
+		}
+
+		compactIfNeeded();
+
+		// Notify admins once
+		AdminNotifier.notifyAdmins(ChatColor.GOLD + String.valueOf(freed.size()) + ChatColor.YELLOW +
+				" players have just been pardoned: " + ChatColor.WHITE + joinUsernames(freed));
+
+		// Notify each online voter once
+		Map<Player, List<PunishedPlayer>> votedFor = new LinkedHashMap<>();
+		freed.forEach(punishedPlayer -> VoterIndex.remove(punishedPlayer)
+				.forEach(voter -> votedFor.computeIfAbsent(voter, key -> new ArrayList<>()).add(punishedPlayer)));
+		votedFor.forEach((voter, pardoned) -> voter.sendMessage(ChatColor.YELLOW + "Players you've voted for have just been pardoned: " +
+				joinUsernames(pardoned)));
+		return freed;
+	}
+
+	/**
+	 * Frees the player without notifying the admins or voters or compacting the store.
+	 *
+	 * @param player The player to free.
+	 * @return The player's punishment, or null if they were not punished.
+	 */
+	private static PunishedPlayer applyFree(OfflinePlayer player) {
 		PunishedPlayer punishedPlayer = punishedPlayers.get(player.getUniqueId());
 		if (punishedPlayer == null) {
-			return;
+			return null;
 		}
 
+		// Removed before their groups are queued, so the group reconciler does not restore the punished group
+		punishedPlayers.remove(punishedPlayer.getPlayerUUID());
+
 		// Remove their restricted group
-		Main.getInstance().getPermissionsHook().playerRemoveGroup(null, player, Main.getInstance().getPluginConfig().PUNISHED_GROUP);
+		GroupMutationQueue.removeGroup(player, Main.getInstance().getPluginConfig().PUNISHED_GROUP);
 
 		// Set their previous groups
 		for (String group : punishedPlayer.getPreviousGroups()) {
-			Main.getInstance().getPermissionsHook().playerAddGroup(null, player, group);
+			GroupMutationQueue.addGroup(player, group);
 		}
+		GroupMutationQueue.expectRestored(punishedPlayer.getPlayerUUID(), punishedPlayer.getPreviousGroups());
 
-		punishedPlayers.remove(punishedPlayer.getPlayerUUID());
-		saveCachedPlayers();
+		VoteDeadlineIndex.remove(punishedPlayer);
+		PunishmentDeadlines.untrack(punishedPlayer.getPlayerUUID());
+		VoteItemCache.invalidate(punishedPlayer.getPlayerUUID());
+		OpenVoteView.invalidate();
+		getStore().recordFree(punishedPlayer.getPlayerUUID());
 
 		if (player.isOnline()) {
 			((Player) player).sendMessage(ChatColor.GREEN + "You have been pardoned by your fellow players! You have returned to your normal rank.");
 		}
+		return punishedPlayer;
+	}
 
-		// Notify admins
-		String username = Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
-		String adminMessage = ChatColor.GOLD + username + ChatColor.YELLOW + " has just been pardoned with " +
-				punishedPlayer.getCurrentVotes() + " votes.";
-		Bukkit.getOnlinePlayers().stream()
-				.filter(p -> p.hasPermission(GeneralCommands.BASE_PERMISSION + ".admin.notifications"))
-				.forEach(admin -> admin.sendMessage(adminMessage));
-
-		// Notify online players
-		String message = ChatColor.YELLOW + "A player you've voted for, " + username + ", has just been pardoned.";
-		punishedPlayer.getVoters().forEach(voterUUID -> {
-			Player voter = Bukkit.getPlayer(voterUUID);
-			if (voter != null && voter.isOnline()) {
-				voter.sendMessage(message);
+	/**
+	 * Joins the usernames of the punished players into a comma separated list.
+	 *
+	 * @param punishedPlayers The punished players.
+	 * @return The comma separated usernames.
+	 */
+	private static String joinUsernames(Collection<PunishedPlayer> punishedPlayers) {
+		StringBuilder usernames = new StringBuilder();
+		punishedPlayers.forEach(punishedPlayer -> {
+			if (usernames.length() != 0) {
+				usernames.append(", ");
 			}
+
+			usernames.append(Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID()));
 		});
+
+		return usernames.toString();
 	}
 
+	/**
+	 * Queues a snapshot of all punished players to be written in the background, compacting the store.
+	 */
 	public static void saveCachedPlayers() {
+		getStore().compact(punishedPlayers.values());
+	}
+
+	/**
+	 * Loads the punished players from the store. Safe to call off the server thread during startup, before
+	 * {@link #startTracking()}.
+	 */
+	public static void loadCachedPlayers() {
+		getStore().load(punishedPlayers);
+	}
+
+	/**
+	 * Indexes the loaded punished players, schedules their deadlines and starts writing changes in the background.
+	 */
+	public static void startTracking() {
+		VoteDeadlineIndex.rebuild(punishedPlayers.values());
+		PunishmentDeadlines.trackAll(punishedPlayers.values());
+		VoterIndex.rebuild(punishedPlayers.values());
+		getStore().start();
+		VoteNotificationTimer.scheduleNextNotification();
+	}
+
+	/**
+	 * Serializes every punished player into a JSONArray for export.
+	 *
+	 * @return The punished players serialized to a JSONArray.
+	 */
+	public static JSONArray serializeJSON() {
 		JSONArray users = new JSONArray();
+		punishedPlayers.values().forEach(p -> users.add(p.serializeJSON()));
+		return users;
+	}
 
-		punishedPlayers.values().stream().forEach(p -> users.add(p.serializeJSON()));
+	/**
+	 * Gets the queue of punished player changes waiting to be written.
+	 *
+	 * @return The persistence write queue.
+	 */
+	public static WriteBehindQueue<?> getWriteQueue() {
+		return getStore().getWriteQueue();
+	}
 
-		try (FileWriter writer = new FileWriter(PUNISHED_PLAYERS_FILE)) {
-			users.writeJSONString(writer);
-		} catch (IOException e) {
-			Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred saving the punished players.", e);
-		}
+	/**
+	 * Gets the store persisting the punished players.
+	 *
+	 * @return The punished player store.
+	 */
+	private static PunishStore getStore() {
+		return Main.getInstance().getPunishStore();
 	}
 
-	public static void loadCachedPlayers() {
-		if (PUNISHED_PLAYERS_FILE.exists()) {
-			JSONParser parser = new JSONParser();
-
-			try (FileReader reader = new FileReader(PUNISHED_PLAYERS_FILE)) {
-				JSONArray users = (JSONArray) parser.parse(reader);
-
-				users.forEach(playerObj -> {
-					JSONObject player = (JSONObject) playerObj;
-					try {
-						PunishedPlayer punishedPlayer = PunishedPlayer.deserializeJSON(player);
-						punishedPlayers.put(punishedPlayer.getPlayerUUID(), punishedPlayer);
-					} catch (IllegalArgumentException e) {
-						Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading a punished player.", e);
-					}
-				});
-
-				VoteNotificationTimer.scheduleNextNotification();
-			} catch (Exception e) {
-				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading the punished players.", e);
-			}
+	/**
+	 * Compacts the store once enough changes have been recorded.
+	 */
+	private static void compactIfNeeded() {
+		if (getStore().needsCompaction()) {
+			saveCachedPlayers();
 		}
 	}
 
@@ -167,41 +363,52 @@ public class PunishManager {
 	 * @param voter The player voting for the punished player to be pardoned.
 	 */
 	public static void playerPardonVote(PunishedPlayer punishedPlayer, Player voter) {
+		playerPardonVotes(punishedPlayer, Collections.singletonList(voter));
+		refreshOpenGUIs(Collections.singletonList(punishedPlayer));
+	}
+
+	/**
+	 * Handles players voting for a punished player to be pardoned. The new votes are recorded together and the vote
+	 * threshold is evaluated once. Open GUI's are not refreshed, see {@link #refreshOpenGUIs(Collection)}.
+	 *
+	 * @param punishedPlayer The punished player being voted for.
+	 * @param voters The players voting for the punished player to be pardoned, in the order they voted.
+	 */
+	public static void playerPardonVotes(PunishedPlayer punishedPlayer, Collection<Player> voters) {
 		String punishedPlayerUsername = Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
 
-		if (punishedPlayer.hasVoted(voter)) {
-			voter.sendMessage(ChatColor.RED + "You have already voted to pardon " + punishedPlayerUsername + ".");
-			return;
+		boolean voted = false;
+		for (Player voter : voters) {
+			if (!punishedPlayer.castVote(voter)) {
+				voter.sendMessage(ChatColor.RED + "You have already voted to pardon " + punishedPlayerUsername + ".");
+				continue;
+			}
+
+			getStore().recordVote(punishedPlayer.getPlayerUUID(), voter.getUniqueId());
+			VoterIndex.add(voter.getUniqueId(), punishedPlayer.getPlayerUUID());
+			voter.sendMessage(ChatColor.YELLOW + "Thanks for your input! We have cast your ballot to pardon " + punishedPlayerUsername);
+			voted = true;
 		}
 
-		punishedPlayer.castVote(voter);
+		if (!voted) {
+			return;
+		}
+		OpenVoteView.invalidateVoteOrder();
 
 		if (punishedPlayer.getCurrentVotes() >= punishedPlayer.getRequiredVotes()) {
 			freePlayer(Bukkit.getOfflinePlayer(punishedPlayer.getPlayerUUID()));
 		} else {
-			saveCachedPlayers();
+			compactIfNeeded();
 		}
+	}
 
-		voter.sendMessage(ChatColor.YELLOW + "Thanks for your input! We have cast your ballot to pardon " + punishedPlayerUsername);
-
-		// Update currently open GUI's.
-		Main.getInstance().getGUIManager().getOpenGUIs().forEach(entry -> {
-			Player player = entry.getKey();
-			InventoryGUI gui = entry.getValue();
-
-			if (player.isOnline()) {
-				Collection<Integer> matchingSlots = gui.getSlotsWithValue(punishedPlayer.getPlayerUUID());
-				matchingSlots.forEach(slot -> {
-					InventoryGUIEntry newEntry = VoteGUI.getPunishedPlayerEntry(player, punishedPlayer);
-					if (newEntry != null) {
-						gui.updateEntry(slot, newEntry);
-					} else {
-						gui.removeEntry(slot);
-					}
-				});
-				player.updateInventory();
-			}
-		});
+	/**
+	 * Updates the entries of the punished players in the currently open GUI's that show them.
+	 *
+	 * @param punishedPlayers The punished players whose entries changed.
+	 */
+	public static void refreshOpenGUIs(Collection<PunishedPlayer> punishedPlayers) {
+		VoteGUISubscriptions.refresh(punishedPlayers);
 	}
 
 }
@@ -10,7 +10,11 @@ import org.json.simple.JSONObject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Represents a player that is under punishment.
@@ -38,25 +42,26 @@ public final class PunishedPlayer {
 	 */
 	private final int requiredVotes;
 	/**
-	 * The array of players that have voted for pardon.
+	 * The set of players that have voted for pardon.
 	 */
-	private ArrayList<UUID> playerVotes;
+	private final Set<UUID> playerVotes;
 	/**
 	 * The previous groups the player was assigned to.
 	 */
 	private final String[] previousGroups;
 
 	private PunishedPlayer(UUID playerUUID, String reason, long chatSpeakTime, long voteOpenTime, int requiredVotes, String[] previousGroups) {
-		this(playerUUID, reason, chatSpeakTime, voteOpenTime, requiredVotes, new ArrayList<>(), previousGroups);
+		this(playerUUID, reason, chatSpeakTime, voteOpenTime, requiredVotes, Collections.emptyList(), previousGroups);
 	}
 
-	private PunishedPlayer(UUID playerUUID, String reason, long chatSpeakTime, long voteOpenTime, int requiredVotes, ArrayList<UUID> playerVotes, String[] previousGroups) {
+	private PunishedPlayer(UUID playerUUID, String reason, long chatSpeakTime, long voteOpenTime, int requiredVotes, Collection<UUID> playerVotes, String[] previousGroups) {
 		this.playerUUID = playerUUID;
 		this.reason = reason;
 		this.chatSpeakTime = chatSpeakTime;
 		this.voteOpenTime = voteOpenTime;
 		this.requiredVotes = requiredVotes;
-		this.playerVotes = playerVotes;
+		this.playerVotes = ConcurrentHashMap.newKeySet(Math.max(16, playerVotes.size()));
+		this.playerVotes.addAll(playerVotes);
 		this.previousGroups = previousGroups;
 	}
 
@@ -107,9 +112,23 @@ public final class PunishedPlayer {
 
 	/**
 	 * Logs the player as casting their vote to pardon the punished player.
+	 *
+	 * @param player The player casting the vote.
+	 * @return true if the vote was counted, false if the player had already voted.
+	 */
+	public boolean castVote(Player player) {
+		return castVote(player.getUniqueId());
+	}
+
+	/**
+	 * Logs the player as casting their vote to pardon the punished player.
+	 * The check and the add are atomic, so a vote is never counted twice.
+	 *
+	 * @param uuid The Minecraft UUID of the player casting the vote.
+	 * @return true if the vote was counted, false if the player had already voted.
 	 */
-	public void castVote(Player player) {
-		playerVotes.add(player.getUniqueId());
+	public boolean castVote(UUID uuid) {
+		return playerVotes.add(uuid);
 	}
 
 	/**
@@ -142,12 +161,12 @@ public final class PunishedPlayer {
 	}
 
 	/**
-	 * Gets the list of player UUID's that have voted for the player.
+	 * Gets a read-only view of the player UUID's that have voted for the player.
 	 *
 	 * @return Player's who have voted to pardon the player.
 	 */
 	public Collection<UUID> getVoters() {
-		return (Collection<UUID>) playerVotes.clone();
+		return Collections.unmodifiableSet(playerVotes);
 	}
 
 	/**
@@ -201,6 +220,22 @@ public final class PunishedPlayer {
 		return player;
 	}
 
+	/**
+	 * Restores a PunishedPlayer from previously stored values.
+	 *
+	 * @param playerUUID The Minecraft UUID of the punished player.
+	 * @param reason The reason the player was punished.
+	 * @param chatSpeakTime The epoch time stamp of when the player is allowed to speak in chat.
+	 * @param voteOpenTime The epoch time stamp of when the pardon vote opens.
+	 * @param requiredVotes The required number of votes for the player to be pardoned.
+	 * @param playerVotes The players that have voted for pardon.
+	 * @param previousGroups The previous groups the player was assigned to.
+	 * @return The restored PunishedPlayer.
+	 */
+	public static PunishedPlayer restore(UUID playerUUID, String reason, long chatSpeakTime, long voteOpenTime, int requiredVotes, Collection<UUID> playerVotes, String[] previousGroups) {
+		return new PunishedPlayer(playerUUID, reason, chatSpeakTime, voteOpenTime, requiredVotes, playerVotes, previousGroups);
+	}
+
 	/**
 	 * Deserializes the JSONObject to a PunishedPlayer.
 	 *
@@ -242,9 +277,9 @@ public final class PunishedPlayer {
 		 */
 		private OfflinePlayer player;
 		/**
-		 * The previous groups the player was assigned to.
+		 * The previous groups the player was assigned to, fetched in the background.
 		 */
-		private String[] previousGroups;
+		private CompletableFuture<String[]> previousGroups;
 		/**
 		 * The reason the player is being punished.
 		 */
@@ -264,7 +299,19 @@ public final class PunishedPlayer {
 
 		public PunishedPlayerBuilder(OfflinePlayer player) {
 			this.player = player;
-			this.previousGroups = Main.getInstance().getPermissionsHook().getPlayerGroups(null, player);
+			this.previousGroups = GroupMutationQueue.fetchGroups(player);
+		}
+
+		/**
+		 * Copies the punishment settings of the template, to punish several players the same way.
+		 *
+		 * @param template The builder to copy the settings from.
+		 */
+		public void copySettings(PunishedPlayerBuilder template) {
+			this.reason = template.reason;
+			this.chatMuteDuration = template.chatMuteDuration;
+			this.voteWaitDuration = template.voteWaitDuration;
+			this.requiredVotes = template.requiredVotes;
 		}
 
 		/**
@@ -277,12 +324,28 @@ public final class PunishedPlayer {
 		}
 
 		/**
-		 * Gets the previous groups the player belonged to before being punished.
+		 * Gets the previous groups the player belonged to before being punished. Waits for the groups if they have not
+		 * been fetched yet, so on the server thread only call it once PunishManager.fetchPreviousGroups has completed.
 		 *
 		 * @return The groups the player was assigned to.
+		 * @throws IllegalStateException If the groups could not be fetched.
+		 */
+		public String[] getPreviousGroups() throws IllegalStateException {
+			try {
+				return previousGroups.join().clone();
+			} catch (CompletionException e) {
+				throw new IllegalStateException("Could not fetch the player's groups.", e.getCause());
+			}
+		}
+
+		/**
+		 * Gets the previous groups the player belonged to before being punished, fetched in the background since the
+		 * builder was created.
+		 *
+		 * @return The future groups the player was assigned to.
 		 */
-		public String[] getPreviousGroups() {
-			return previousGroups.clone();
+		public CompletableFuture<String[]> getPreviousGroupsFuture() {
+			return previousGroups;
 		}
 
 		/**
@@ -377,7 +440,7 @@ public final class PunishedPlayer {
 				throw new IllegalArgumentException("There are unset required variables.");
 			}
 
-			return new PunishedPlayer(player.getUniqueId(), reason, chatMuteDuration.durationToEpochTime(), voteWaitDuration.durationToEpochTime(), requiredVotes, previousGroups);
+			return new PunishedPlayer(player.getUniqueId(), reason, chatMuteDuration.durationToEpochTime(), voteWaitDuration.durationToEpochTime(), requiredVotes, getPreviousGroups());
 		}
 
 	}
@@ -0,0 +1,58 @@
+package com.simplexservers.minecraft.badgeofinfamy;
+
+import org.bukkit.Bukkit;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks if the plugin's state has finished loading. The state is loaded in the background while the server starts,
+ * so anything depending on it waits for the gate or refuses to run until it opens. The gate IS thread-safe.
+ */
+public class StartupGate {
+
+	/**
+	 * The longest time a background thread waits for the state to load.
+	 */
+	private static final long WAIT_TIMEOUT_SECONDS = 10;
+
+	/**
+	 * Released once the state has loaded.
+	 */
+	private static final CountDownLatch ready = new CountDownLatch(1);
+
+	/**
+	 * Gets if the state has finished loading.
+	 *
+	 * @return true if the state is loaded, false otherwise.
+	 */
+	public static boolean isReady() {
+		return ready.getCount() == 0;
+	}
+
+	/**
+	 * Waits for the state to finish loading, up to the timeout. Never waits on the server thread, which is loading it.
+	 *
+	 * @return true if the state is loaded, false if it is still loading.
+	 */
+	public static boolean awaitReady() {
+		if (isReady() || Bukkit.isPrimaryThread()) {
+			return isReady();
+		}
+
+		try {
+			return ready.await(WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Opens the gate once the state has loaded.
+	 */
+	public static void markReady() {
+		ready.countDown();
+	}
+
+}
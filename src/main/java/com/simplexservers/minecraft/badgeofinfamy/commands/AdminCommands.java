@@ -1,12 +1,20 @@
 package com.simplexservers.minecraft.badgeofinfamy.commands;
 
+import com.simplexservers.minecraft.badgeofinfamy.AdminNotifier;
+import com.simplexservers.minecraft.badgeofinfamy.BatchNameResolver;
+import com.simplexservers.minecraft.badgeofinfamy.GroupMutationQueue;
 import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.PlayerSettings;
 import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
 import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
 import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPlayerCache;
 import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPunishment;
 import com.simplexservers.minecraft.badgeofinfamy.log.PunishLog;
 import com.simplexservers.minecraft.badgeofinfamy.prompts.PunishPrompt;
+import com.simplexservers.minecraft.badgeofinfamy.storage.WriteBehindQueue;
+import com.simplexservers.minecraft.badgeofinfamy.votes.NotificationFanOut;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteQueue;
 import com.simplexservers.minecraft.bukkitutils.commands.BukkitCommandInvoker;
 import com.simplexservers.minecraft.commandutils.CommandHandler;
 import com.simplexservers.minecraft.commandutils.CommandManager;
@@ -14,11 +22,24 @@ import com.simplexservers.minecraft.commandutils.CommandProperties;
 import com.simplexservers.minecraft.commandutils.HelpCommandUtil;
 import com.simplexservers.minecraft.promptutils.ChatColor;
 import com.simplexservers.minecraft.promptutils.Time;
+import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.json.simple.JSONArray;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
 
 public class AdminCommands implements CommandHandler {
 
@@ -52,17 +73,28 @@ public class AdminCommands implements CommandHandler {
 		}
 
 		// Start the punish prompt
-		new PunishPrompt(admin, victim, Main.getInstance().getPromptListener(), builder -> {
-			PunishManager.punishPlayer(builder);
-
-			if (victim.isOnline()) {
-				((Player) victim).sendMessage(ChatColor.RED + "You have been penalized for " + ChatColor.WHITE + builder.getReason() + ChatColor.RED + "." +
-						" As a result, you have been muted in chat for " + ChatColor.WHITE + builder.getChatMuteDuration().formatRounded() + ChatColor.RED +
-						" and you have been demoted to the rank " + ChatColor.WHITE + Main.getInstance().getPluginConfig().PUNISHED_GROUP + ChatColor.RED + " until other players vote to have you pardoned.");
-			}
-			String victimName = Main.getInstance().getNameResolver().getUsername(victim.getUniqueId());
-			admin.sendMessage(victimName + ChatColor.GREEN + " has been successfully punished.");
-		}).begin();
+		new PunishPrompt(admin, victim, Main.getInstance().getPromptListener(), builder ->
+				// Punish once the victim's groups are fetched, without waiting on the server thread
+				PunishManager.fetchPreviousGroups(Collections.singletonList(builder)).whenComplete((result, error) -> {
+					try {
+						if (error != null) {
+							throw new IllegalStateException("Could not fetch the player's groups.", error);
+						}
+						PunishManager.punishPlayer(builder);
+					} catch (IllegalStateException e) {
+						Main.getInstance().getLogger().log(Level.WARNING, "An error occurred punishing a player.", e);
+						admin.sendMessage(ChatColor.RED + "Could not fetch the player's groups, they have not been punished. Please try again.");
+						return;
+					}
+
+					if (victim.isOnline()) {
+						((Player) victim).sendMessage(ChatColor.RED + "You have been penalized for " + ChatColor.WHITE + builder.getReason() + ChatColor.RED + "." +
+								" As a result, you have been muted in chat for " + ChatColor.WHITE + builder.getChatMuteDuration().formatRounded() + ChatColor.RED +
+								" and you have been demoted to the rank " + ChatColor.WHITE + Main.getInstance().getPluginConfig().PUNISHED_GROUP + ChatColor.RED + " until other players vote to have you pardoned.");
+					}
+					String victimName = Main.getInstance().getNameResolver().getUsername(victim.getUniqueId());
+					admin.sendMessage(victimName + ChatColor.GREEN + " has been successfully punished.");
+				})).begin();
 	}
 
 	@CommandProperties(
@@ -82,6 +114,100 @@ public class AdminCommands implements CommandHandler {
 		admin.sendMessage(ChatColor.GREEN + victimName + " has just been pardoned.");
 	}
 
+	@CommandProperties(
+			command = "boi punishall",
+			usage = "/boi punishall <player1,player2,...>",
+			description = "Starts the prompt to punish several players the same way.",
+			permission = GeneralCommands.BASE_PERMISSION + ".admin.punish"
+	)
+	public void punishPlayers(Player admin, String playerNames) {
+		List<OfflinePlayer> victims = parsePlayers(admin, playerNames);
+		if (victims == null) {
+			return;
+		}
+
+		// Fetch every victim's groups while the prompt runs
+		List<PunishedPlayer.PunishedPlayerBuilder> builders = new ArrayList<>();
+		victims.forEach(victim -> builders.add(new PunishedPlayer.PunishedPlayerBuilder(victim)));
+
+		// Start the punish prompt on the first victim's builder, the answers are used as the template for every victim
+		new PunishPrompt(admin, builders.get(0), Main.getInstance().getPromptListener(), template -> {
+			builders.forEach(builder -> builder.copySettings(template));
+
+			// Punish once every victim's groups are fetched, without waiting on the server thread
+			PunishManager.fetchPreviousGroups(builders).whenComplete((result, error) -> {
+				List<PunishedPlayer> punished;
+				try {
+					if (error != null) {
+						throw new IllegalStateException("Could not fetch the players' groups.", error);
+					}
+					punished = PunishManager.punishPlayers(builders);
+				} catch (IllegalStateException e) {
+					Main.getInstance().getLogger().log(Level.WARNING, "An error occurred punishing players.", e);
+					admin.sendMessage(ChatColor.RED + "Could not fetch the players' groups, no one has been punished. Please try again.");
+					return;
+				}
+
+				for (OfflinePlayer victim : victims) {
+					if (victim.isOnline()) {
+						((Player) victim).sendMessage(ChatColor.RED + "You have been penalized for " + ChatColor.WHITE + template.getReason() + ChatColor.RED + "." +
+								" As a result, you have been muted in chat for " + ChatColor.WHITE + template.getChatMuteDuration().formatRounded() + ChatColor.RED +
+								" and you have been demoted to the rank " + ChatColor.WHITE + Main.getInstance().getPluginConfig().PUNISHED_GROUP + ChatColor.RED + " until other players vote to have you pardoned.");
+					}
+				}
+				admin.sendMessage(ChatColor.GREEN + "Successfully punished " + punished.size() + " players.");
+			});
+		}).begin();
+	}
+
+	@CommandProperties(
+			command = "boi pardonall",
+			usage = "/boi pardonall <player1,player2,...>",
+			description = "Instantly pardons several players without the need for a vote.",
+			permission = GeneralCommands.BASE_PERMISSION + ".admin.pardon"
+	)
+	public void pardonPlayers(Player admin, String playerNames) {
+		List<OfflinePlayer> victims = parsePlayers(admin, playerNames);
+		if (victims == null) {
+			return;
+		}
+
+		List<PunishedPlayer> freed = PunishManager.freePlayers(victims);
+		admin.sendMessage(ChatColor.GREEN + "Pardoned " + freed.size() + " of " + victims.size() + " players." +
+				(freed.size() < victims.size() ? " The others were not punished." : ""));
+	}
+
+	/**
+	 * Parses a comma separated list of player names.
+	 *
+	 * @param admin The sender to report unknown players to.
+	 * @param playerNames The comma separated player names.
+	 * @return The distinct players, or null if a player does not exist or no names were given.
+	 */
+	private List<OfflinePlayer> parsePlayers(CommandSender admin, String playerNames) {
+		Map<UUID, OfflinePlayer> players = new LinkedHashMap<>();
+		for (String name : playerNames.split(",")) {
+			name = name.trim();
+			if (name.isEmpty()) {
+				continue;
+			}
+
+			OfflinePlayer player = Main.getInstance().getNameResolver().getOfflinePlayer(name);
+			if (player == null) {
+				admin.sendMessage(ChatColor.RED + "The player " + name + " does not exist.");
+				return null;
+			}
+			players.put(player.getUniqueId(), player);
+		}
+
+		if (players.isEmpty()) {
+			admin.sendMessage(ChatColor.RED + "Please enter the names of the players separated by commas.");
+			return null;
+		}
+
+		return new ArrayList<>(players.values());
+	}
+
 	@CommandProperties(
 			command = "boi log",
 			usage = "/boi log <playername>",
@@ -94,7 +220,26 @@ public class AdminCommands implements CommandHandler {
 			return;
 		}
 
-		LoggedPlayer loggedPlayer = PunishLog.getLoggedPlayer(punishedPlayer);
+		// Load the log off the server thread and reply once it is available
+		PunishLog.getLoggedPlayerAsync(punishedPlayer.getUniqueId()).whenComplete((loggedPlayer, error) -> {
+			if (error != null) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading a player punishment log.", error);
+				admin.sendMessage(ChatColor.RED + "An error occurred loading that player's log. Check the console for details.");
+				return;
+			}
+
+			sendPlayerLog(admin, punishedPlayer, loggedPlayer);
+		});
+	}
+
+	/**
+	 * Sends the punishments the player has received to the admin.
+	 *
+	 * @param admin The sender viewing the log.
+	 * @param punishedPlayer The player whose log is being viewed.
+	 * @param loggedPlayer The logged punishments of the player.
+	 */
+	private void sendPlayerLog(CommandSender admin, OfflinePlayer punishedPlayer, LoggedPlayer loggedPlayer) {
 		Collection<LoggedPunishment> punishments = loggedPlayer.getLoggedPunishments();
 
 		if (punishments.isEmpty()) {
@@ -128,13 +273,40 @@ public class AdminCommands implements CommandHandler {
 			return;
 		}
 
-		String playerUsername = Main.getInstance().getNameResolver().getUsername(player.getUniqueId());
 		PunishedPlayer punishedPlayer = PunishManager.getPunishedPlayer(player);
-		if (punishedPlayer == null) {
-			admin.sendMessage(ChatColor.RED + playerUsername + " is not currently punished.");
-			return;
+		List<UUID> uuids = new ArrayList<>();
+		uuids.add(player.getUniqueId());
+		if (punishedPlayer != null) {
+			uuids.addAll(punishedPlayer.getVoters());
 		}
 
+		// Resolve the player and voter names together off the server thread
+		BatchNameResolver.resolveAll(uuids).whenComplete((usernames, error) -> {
+			if (error != null) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred resolving player names.", error);
+				admin.sendMessage(ChatColor.RED + "An error occurred resolving player names. Check the console for details.");
+				return;
+			}
+
+			String playerUsername = usernames.getOrDefault(player.getUniqueId(), player.getName());
+			if (punishedPlayer == null) {
+				admin.sendMessage(ChatColor.RED + playerUsername + " is not currently punished.");
+				return;
+			}
+
+			sendPunishmentDetails(admin, punishedPlayer, playerUsername, usernames);
+		});
+	}
+
+	/**
+	 * Sends the details of the player's current punishment to the admin.
+	 *
+	 * @param admin The sender viewing the details.
+	 * @param punishedPlayer The punished player.
+	 * @param playerUsername The username of the punished player.
+	 * @param usernames The resolved usernames of the voters.
+	 */
+	private void sendPunishmentDetails(CommandSender admin, PunishedPlayer punishedPlayer, String playerUsername, Map<UUID, String> usernames) {
 		StringBuilder punishmentDetails = new StringBuilder();
 		String border = ChatColor.YELLOW + "-------------------------------------";
 		punishmentDetails.append(border);
@@ -153,7 +325,7 @@ public class AdminCommands implements CommandHandler {
 
 			StringBuilder currentVotes = new StringBuilder();
 			punishedPlayer.getVoters().forEach(uuid -> {
-				String voterUsername = Main.getInstance().getNameResolver().getUsername(uuid);
+				String voterUsername = usernames.getOrDefault(uuid, uuid.toString());
 				if (currentVotes.length() != 0) {
 					currentVotes.append(", ");
 				}
@@ -187,23 +359,103 @@ public class AdminCommands implements CommandHandler {
 			permission = GeneralCommands.BASE_PERMISSION + ".admin.list"
 	)
 	public void listPunished(CommandSender admin) {
-		StringBuilder punished = new StringBuilder();
 		Collection<PunishedPlayer> punishedPlayers = PunishManager.getPunishedPlayers();
-		punishedPlayers.forEach(punishedPlayer -> {
-			if (punished.length() != 0) {
-				punished.append(", ");
+		List<UUID> uuids = new ArrayList<>();
+		punishedPlayers.forEach(punishedPlayer -> uuids.add(punishedPlayer.getPlayerUUID()));
+
+		// Resolve the names together off the server thread
+		BatchNameResolver.resolveAll(uuids).whenComplete((usernames, error) -> {
+			if (error != null) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred resolving player names.", error);
+				admin.sendMessage(ChatColor.RED + "An error occurred resolving player names. Check the console for details.");
+				return;
+			}
+
+			StringBuilder punished = new StringBuilder();
+			uuids.forEach(uuid -> {
+				if (punished.length() != 0) {
+					punished.append(", ");
+				}
+
+				punished.append(usernames.getOrDefault(uuid, uuid.toString()));
+			});
+
+			if (punished.length() == 0) {
+				punished.append("None");
 			}
 
-			String username = Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
-			punished.append(username);
+			admin.sendMessage(ChatColor.BLUE + "Currently punished players (" + ChatColor.GOLD + punishedPlayers.size() +
+					ChatColor.BLUE + "): " + ChatColor.WHITE + punished.toString());
 		});
+	}
 
-		if (punished.length() == 0) {
-			punished.append("None");
-		}
+	@CommandProperties(
+			command = "boi export",
+			usage = "/boi export",
+			description = "Exports the punished players and player settings as JSON.",
+			permission = GeneralCommands.BASE_PERMISSION + ".admin.export"
+	)
+	public void exportJSON(CommandSender admin) {
+		File exportDir = new File(Main.getInstance().getDataFolder(), "export");
+		JSONArray punishedPlayers = PunishManager.serializeJSON();
+
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				exportDir.mkdirs();
+				String reply;
+				try (FileWriter punishedWriter = new FileWriter(new File(exportDir, "punished_players.json"));
+				     FileWriter settingsWriter = new FileWriter(new File(exportDir, "player_settings.json"))) {
+					punishedPlayers.writeJSONString(punishedWriter);
+					PlayerSettings.serializeJSON().writeJSONString(settingsWriter);
+					reply = ChatColor.GREEN + "Exported the punished players and player settings to " + exportDir.getPath() + ".";
+				} catch (IOException e) {
+					Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred exporting to JSON.", e);
+					reply = ChatColor.RED + "An error occurred exporting to JSON. Check the console for details.";
+				}
+
+				// Reply on the server thread, senders are not thread-safe
+				String message = reply;
+				Bukkit.getScheduler().runTask(Main.getInstance(), () -> admin.sendMessage(message));
+			}
+		}.runTaskAsynchronously(Main.getInstance());
+	}
 
-		admin.sendMessage(ChatColor.BLUE + "Currently punished players (" + ChatColor.GOLD + punishedPlayers.size() +
-				ChatColor.BLUE + "): " + ChatColor.WHITE + punished.toString());
+	@CommandProperties(
+			command = "boi stats",
+			usage = "/boi stats",
+			description = "Shows the plugin's internal performance statistics.",
+			permission = GeneralCommands.BASE_PERMISSION + ".admin.stats"
+	)
+	public void viewStats(CommandSender admin) {
+		StringBuilder stats = new StringBuilder();
+		String border = ChatColor.YELLOW + "-------------------------------------";
+		stats.append(border);
+
+		WriteBehindQueue<?> writeQueue = PunishManager.getWriteQueue();
+		stats.append("\n" + ChatColor.BLUE + "Persistence: " + ChatColor.WHITE + writeQueue.getSubmittedCount() + " changes, " +
+				writeQueue.getFlushCount() + " writes, " + writeQueue.getCoalescedCount() + " coalesced");
+
+		LoggedPlayerCache logCache = PunishLog.getCache();
+		stats.append("\n" + ChatColor.BLUE + "Log Cache: " + ChatColor.WHITE + logCache.size() + " players, " +
+				logCache.getWeight() + " punishments, " + logCache.getHitCount() + " hits, " + logCache.getMissCount() + " misses, " +
+				logCache.getEvictionCount() + " evictions");
+
+		stats.append("\n" + ChatColor.BLUE + "Votes: " + ChatColor.WHITE + VoteQueue.getVoteCount() + " in " + VoteQueue.getBatchCount() +
+				" batches, max batch " + VoteQueue.getMaxBatchSize() + String.format(", latency %.1f ms avg, %.1f ms max",
+				VoteQueue.getAverageLatencyMillis(), VoteQueue.getMaxLatencyMillis()));
+
+		stats.append("\n" + ChatColor.BLUE + "Notifications: " + ChatColor.WHITE + NotificationFanOut.getBroadcastCount() +
+				" sent, last to " + NotificationFanOut.getLastRecipients() + " players over " + NotificationFanOut.getLastTicks() +
+				String.format(" ticks in %.1f ms (%.1f ms sending)", NotificationFanOut.getLastDurationMillis(),
+				NotificationFanOut.getLastSendMillis()));
+		stats.append("\n" + ChatColor.BLUE + "Admin Subscribers: " + ChatColor.WHITE + AdminNotifier.getSubscriberCount());
+		stats.append("\n" + ChatColor.BLUE + "Group Changes: " + ChatColor.WHITE + GroupMutationQueue.getPendingCount() + " pending, " +
+				GroupMutationQueue.getAppliedCount() + " applied, " + GroupMutationQueue.getRetryCount() + " retries, " +
+				GroupMutationQueue.getRepairCount() + " repaired");
+
+		stats.append("\n" + border);
+		admin.sendMessage(stats.toString());
 	}
 
 }
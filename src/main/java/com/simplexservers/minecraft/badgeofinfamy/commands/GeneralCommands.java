@@ -3,9 +3,10 @@ package com.simplexservers.minecraft.badgeofinfamy.commands;
 import com.simplexservers.minecraft.badgeofinfamy.Main;
 import com.simplexservers.minecraft.badgeofinfamy.PlayerSettings;
 import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
 import com.simplexservers.minecraft.badgeofinfamy.votes.VoteGUI;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoterIndex;
 import com.simplexservers.minecraft.bukkitutils.commands.BukkitCommandInvoker;
-import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUI;
 import com.simplexservers.minecraft.commandutils.CommandHandler;
 import com.simplexservers.minecraft.commandutils.CommandManager;
 import com.simplexservers.minecraft.commandutils.CommandProperties;
@@ -14,6 +15,9 @@ import com.simplexservers.minecraft.promptutils.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Set;
+import java.util.UUID;
+
 public class GeneralCommands implements CommandHandler {
 
 	public static final String BASE_PERMISSION = "badgeofinfamy";
@@ -46,14 +50,38 @@ public class GeneralCommands implements CommandHandler {
 			return;
 		}
 
-		InventoryGUI gui = VoteGUI.buildVoteGUI(player);
-
-		if (gui == null) {
+		if (!VoteGUI.openVoteGUI(player)) {
 			player.sendMessage(ChatColor.RED + "No one is currently up for pardon. You'll be notified once a new vote is open.");
+		}
+	}
+
+	@CommandProperties(
+			command = "pardon mine",
+			usage = "/pardon mine",
+			description = "Lists the players you've voted to pardon.",
+			permission = BASE_PERMISSION + ".pardon"
+	)
+	public void boiVotedFor(Player player) {
+		Set<UUID> votedFor = VoterIndex.getVotedFor(player.getUniqueId());
+		if (votedFor.isEmpty()) {
+			player.sendMessage(ChatColor.RED + "You haven't voted to pardon anyone who is still punished.");
 			return;
 		}
 
-		Main.getInstance().getGUIManager().openGUI(player, gui);
+		StringBuilder votes = new StringBuilder();
+		votedFor.forEach(punishedUUID -> {
+			PunishedPlayer punishedPlayer = PunishManager.getPunishedPlayer(punishedUUID);
+			if (punishedPlayer == null) {
+				return;
+			}
+
+			String username = Main.getInstance().getNameResolver().getUsername(punishedUUID);
+			votes.append("\n" + ChatColor.GOLD + username + ChatColor.WHITE + " - " + punishedPlayer.getCurrentVotes() +
+					" out of " + punishedPlayer.getRequiredVotes() + " votes");
+		});
+
+		player.sendMessage(ChatColor.BLUE + "Players you've voted to pardon (" + ChatColor.GOLD + votedFor.size() +
+				ChatColor.BLUE + "):" + votes.toString());
 	}
 
 	@CommandProperties(
@@ -71,9 +99,8 @@ public class GeneralCommands implements CommandHandler {
 			permission = BASE_PERMISSION + ".settings.votenotify"
 	)
 	public void boiToggleVoteNotify(Player player) {
-		PlayerSettings settings = PlayerSettings.getPlayerSettings(player);
-		boolean newState = !settings.showVoteNotification();
-		settings.setShowVoteNotification(newState);
+		boolean newState = !PlayerSettings.showVoteNotification(player.getUniqueId());
+		PlayerSettings.setShowVoteNotification(player.getUniqueId(), newState);
 
 		player.sendMessage(ChatColor.GREEN + "Vote notifications toggled to " + ChatColor.WHITE + (newState ? "on" : "off") + ChatColor.GREEN + ".");
 	}
@@ -94,14 +121,12 @@ public class GeneralCommands implements CommandHandler {
 	)
 	public void boiSetVoteNotify(Player player, boolean state) {
 		String stateText = state ? "on" : "off";
-		PlayerSettings settings = PlayerSettings.getPlayerSettings(player);
-
-		if (settings.showVoteNotification() == state) {
+		if (PlayerSettings.showVoteNotification(player.getUniqueId()) == state) {
 			player.sendMessage(ChatColor.GREEN + "Vote notifications already set to " + ChatColor.WHITE + stateText + ChatColor.GREEN + ".");
 			return;
 		}
 
-		settings.setShowVoteNotification(state);
+		PlayerSettings.setShowVoteNotification(player.getUniqueId(), state);
 		player.sendMessage(ChatColor.GREEN + "Vote notifications changed to " + ChatColor.WHITE + stateText + ChatColor.GREEN + ".");
 	}
 
@@ -17,6 +17,11 @@ public class Config {
 	public final String PUNISHED_GROUP;
 	public final long VOTE_NOTIFICATION_DURATION;
 	public final long VOTE_NOTIFICATION_INTERVAL;
+	public final int VOTE_NOTIFICATION_SENDS_PER_TICK;
+	public final long PERSISTENCE_FLUSH_INTERVAL;
+	public final int JOURNAL_COMPACT_THRESHOLD;
+	public final String STORAGE_BACKEND;
+	public final int HISTORY_CACHE_SIZE;
 
 	public Config() throws IOException {
 		if (!CONFIG_FILE.exists()) {
@@ -30,6 +35,23 @@ public class Config {
 		PUNISHED_GROUP = config.getString("PunishGroup");
 		VOTE_NOTIFICATION_DURATION = Time.parseTime(config.getString("VoteNotifications.Duration")).getSeconds();
 		VOTE_NOTIFICATION_INTERVAL = Time.parseTime(config.getString("VoteNotifications.Interval")).getSeconds();
+		VOTE_NOTIFICATION_SENDS_PER_TICK = Math.max(1, Integer.parseInt(getString("VoteNotifications.SendsPerTick", "50")));
+		PERSISTENCE_FLUSH_INTERVAL = Math.max(1, Time.parseTime(getString("Persistence.FlushInterval", "5 sec")).getSeconds());
+		JOURNAL_COMPACT_THRESHOLD = Integer.parseInt(getString("Persistence.CompactThreshold", "500"));
+		STORAGE_BACKEND = getString("Persistence.Backend", "file");
+		HISTORY_CACHE_SIZE = Math.max(1, Integer.parseInt(getString("Persistence.HistoryCacheSize", "5000")));
+	}
+
+	/**
+	 * Gets the string at the path, falling back to the default for settings added after the config was generated.
+	 *
+	 * @param path The path of the setting.
+	 * @param def The default value if the setting is missing.
+	 * @return The value of the setting.
+	 */
+	private String getString(String path, String def) {
+		String value = config.getString(path);
+		return value != null ? value : def;
 	}
 
 }
@@ -0,0 +1,46 @@
+package com.simplexservers.minecraft.badgeofinfamy.listeners;
+
+import com.simplexservers.minecraft.badgeofinfamy.AdminNotifier;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Keeps the admin notification subscribers up to date as players come and go.
+ */
+public class AdminNotifierListener implements Listener {
+
+	/**
+	 * Subscribes the player if they have the permission, after the permissions plugin has set them up.
+	 *
+	 * @param event The Bukkit join event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerJoin(PlayerJoinEvent event) {
+		AdminNotifier.update(event.getPlayer());
+	}
+
+	/**
+	 * Rechecks the player, since permissions can differ per world.
+	 *
+	 * @param event The Bukkit world change event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+		AdminNotifier.update(event.getPlayer());
+	}
+
+	/**
+	 * Unsubscribes the player once they leave.
+	 *
+	 * @param event The Bukkit quit event.
+	 */
+	@EventHandler
+	public void onPlayerQuit(PlayerQuitEvent event) {
+		AdminNotifier.remove(event.getPlayer().getUniqueId());
+	}
+
+}
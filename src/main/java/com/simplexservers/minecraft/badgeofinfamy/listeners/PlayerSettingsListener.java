@@ -0,0 +1,37 @@
+package com.simplexservers.minecraft.badgeofinfamy.listeners;
+
+import com.simplexservers.minecraft.badgeofinfamy.PlayerSettings;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Loads player settings while players are online.
+ */
+public class PlayerSettingsListener implements Listener {
+
+	/**
+	 * Loads the player's settings before they join, off the server thread.
+	 *
+	 * @param event The Bukkit pre-login event.
+	 */
+	@EventHandler(priority = EventPriority.MONITOR)
+	public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+		if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+			PlayerSettings.loadPlayer(event.getUniqueId());
+		}
+	}
+
+	/**
+	 * Drops the player's settings from memory once they leave.
+	 *
+	 * @param event The Bukkit quit event.
+	 */
+	@EventHandler
+	public void onPlayerQuit(PlayerQuitEvent event) {
+		PlayerSettings.unloadPlayer(event.getPlayer().getUniqueId());
+	}
+
+}
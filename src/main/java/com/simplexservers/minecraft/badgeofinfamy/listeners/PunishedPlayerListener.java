@@ -2,38 +2,142 @@ package com.simplexservers.minecraft.badgeofinfamy.listeners;
 
 import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
 import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.StartupGate;
 import com.simplexservers.minecraft.promptutils.ChatColor;
 import com.simplexservers.minecraft.promptutils.Time;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Bukkit listener to impose restrictions on punished players.
  */
 public class PunishedPlayerListener implements Listener {
 
+	/**
+	 * The most mute notices a player can be sent in a burst.
+	 */
+	private static final int NOTICE_BURST = 2;
+	/**
+	 * The time for a muted player to earn another mute notice.
+	 */
+	private static final long NOTICE_REFILL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	/**
+	 * The mute notice state of each muted player who has tried to chat.
+	 */
+	private final ConcurrentHashMap<UUID, MuteNotice> muteNotices = new ConcurrentHashMap<>();
+
 	/**
 	 * Handles blocking the player from chat while they're muted under punishment.
+	 * Runs on the async chat threads, so players who are not punished only do a lock-free lookup. Until the punished
+	 * players have loaded, chat waits for them and is blocked if they are still loading.
 	 *
 	 * @param event The Bukkit chat event.
 	 */
 	@EventHandler
 	public void onPlayerChat(AsyncPlayerChatEvent event) {
-		PunishedPlayer punishedPlayer = PunishManager.getPunishedPlayer(event.getPlayer());
+		if (!StartupGate.awaitReady()) {
+			event.setCancelled(true);
+			event.getPlayer().sendMessage(ChatColor.RED + "Chat is unavailable until the server has finished loading.");
+			return;
+		}
+
+		UUID uuid = event.getPlayer().getUniqueId();
+		PunishedPlayer punishedPlayer = PunishManager.getPunishedPlayer(uuid);
 
 		if (punishedPlayer == null) {
 			// The player is not being punished
 			return;
 		}
 
-		if (!punishedPlayer.isAllowedToSpeak()) {
-			event.setCancelled(true);
+		if (punishedPlayer.isAllowedToSpeak()) {
+			muteNotices.remove(uuid);
+			return;
+		}
+
+		event.setCancelled(true);
 
-			Time duration = Time.epochTimeToDuration(punishedPlayer.getChatSpeakTime());
-			event.getPlayer().sendMessage(ChatColor.RED + "You are not allowed to speak in chat for " +
-					ChatColor.WHITE + duration.formatRounded() + ChatColor.RED + ".");
+		// Messages past the notice limit are cancelled silently
+		MuteNotice notice = muteNotices.computeIfAbsent(uuid, key -> new MuteNotice());
+		String message = notice.take(punishedPlayer.getChatSpeakTime());
+		if (message != null) {
+			event.getPlayer().sendMessage(message);
 		}
 	}
 
+	/**
+	 * Drops the mute notice state of players who leave.
+	 *
+	 * @param event The Bukkit quit event.
+	 */
+	@EventHandler
+	public void onPlayerQuit(PlayerQuitEvent event) {
+		muteNotices.remove(event.getPlayer().getUniqueId());
+	}
+
+	/**
+	 * The cached mute notice of a muted player and a token bucket limiting how often it is sent.
+	 */
+	private static class MuteNotice {
+
+		/**
+		 * The cached notice message.
+		 */
+		private String message = null;
+		/**
+		 * The epoch time stamp the cached message was built at, in seconds.
+		 */
+		private long messageTime = -1;
+		/**
+		 * The chat speak time the cached message was built for.
+		 */
+		private long messageSpeakTime = -1;
+		/**
+		 * The number of notices that can be sent right away.
+		 */
+		private int tokens = NOTICE_BURST;
+		/**
+		 * The System.nanoTime() the bucket was last refilled at.
+		 */
+		private long refillTime = System.nanoTime();
+
+		/**
+		 * Takes a token and gets the notice message, rebuilding it at most once per second.
+		 *
+		 * @param chatSpeakTime The epoch time stamp the player is allowed to speak at.
+		 * @return The notice message, or null if the player has been notified too often.
+		 */
+		private synchronized String take(long chatSpeakTime) {
+			long now = System.nanoTime();
+			long earned = (now - refillTime) / NOTICE_REFILL_NANOS;
+			if (earned > 0) {
+				tokens = (int) Math.min(NOTICE_BURST, tokens + earned);
+				refillTime = tokens == NOTICE_BURST ? now : refillTime + earned * NOTICE_REFILL_NANOS;
+			}
+
+			if (tokens == 0) {
+				return null;
+			}
+			tokens--;
+
+			long currentTime = System.currentTimeMillis() / 1000L;
+			if (currentTime != messageTime || chatSpeakTime != messageSpeakTime) {
+				Time duration = Time.epochTimeToDuration(chatSpeakTime);
+				message = ChatColor.RED + "You are not allowed to speak in chat for " +
+						ChatColor.WHITE + duration.formatRounded() + ChatColor.RED + ".";
+				messageTime = currentTime;
+				messageSpeakTime = chatSpeakTime;
+			}
+
+			return message;
+		}
+
+	}
+
 }
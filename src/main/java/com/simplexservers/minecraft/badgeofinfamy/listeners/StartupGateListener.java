@@ -0,0 +1,77 @@
+package com.simplexservers.minecraft.badgeofinfamy.listeners;
+
+import com.simplexservers.minecraft.badgeofinfamy.StartupGate;
+import com.simplexservers.minecraft.promptutils.ChatColor;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+
+/**
+ * Holds back logins and the plugin's commands until the plugin's state has loaded.
+ */
+public class StartupGateListener implements Listener {
+
+	/**
+	 * The message sent when a command is used before the state has loaded.
+	 */
+	private static final String LOADING_MESSAGE = ChatColor.RED + "BadgeOfInfamy is still loading. Please try again in a moment.";
+
+	/**
+	 * Waits for the state to load before letting the player log in, so their settings and punishment are in place.
+	 * Runs on the login thread.
+	 *
+	 * @param event The Bukkit pre-login event.
+	 */
+	@EventHandler(priority = EventPriority.LOWEST)
+	public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+		if (!StartupGate.awaitReady()) {
+			event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, "The server is still starting. Please try again in a moment.");
+		}
+	}
+
+	/**
+	 * Refuses the plugin's commands from players until the state has loaded.
+	 *
+	 * @param event The Bukkit command event.
+	 */
+	@EventHandler(priority = EventPriority.LOWEST)
+	public void onPlayerCommand(PlayerCommandPreprocessEvent event) {
+		if (!StartupGate.isReady() && isPluginCommand(event.getMessage().substring(1))) {
+			event.setCancelled(true);
+			event.getPlayer().sendMessage(LOADING_MESSAGE);
+		}
+	}
+
+	/**
+	 * Refuses the plugin's commands from the console until the state has loaded.
+	 *
+	 * @param event The Bukkit console command event.
+	 */
+	@EventHandler(priority = EventPriority.LOWEST)
+	public void onServerCommand(ServerCommandEvent event) {
+		if (!StartupGate.isReady() && isPluginCommand(event.getCommand())) {
+			event.setCancelled(true);
+			event.getSender().sendMessage(LOADING_MESSAGE);
+		}
+	}
+
+	/**
+	 * Gets if the command line runs one of the plugin's commands.
+	 *
+	 * @param commandLine The command line without the leading slash.
+	 * @return true if the command belongs to the plugin, false otherwise.
+	 */
+	private static boolean isPluginCommand(String commandLine) {
+		String label = commandLine.split(" ", 2)[0].toLowerCase();
+		// Commands can be prefixed with the plugin name
+		if (label.startsWith("badgeofinfamy:")) {
+			label = label.substring("badgeofinfamy:".length());
+		}
+
+		return label.equals("boi") || label.equals("pardon");
+	}
+
+}
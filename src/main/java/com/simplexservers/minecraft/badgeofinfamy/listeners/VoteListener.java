@@ -1,12 +1,18 @@
 package com.simplexservers.minecraft.badgeofinfamy.listeners;
 
+import com.simplexservers.minecraft.badgeofinfamy.BatchNameResolver;
 import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
-import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteGUI;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteGUISubscriptions;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoteQueue;
+import com.simplexservers.minecraft.badgeofinfamy.votes.VoterIndex;
 import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUISelectEvent;
 import com.simplexservers.minecraft.promptutils.ChatColor;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryCloseEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.UUID;
 
@@ -17,18 +23,57 @@ public class VoteListener implements Listener {
 
 	/**
 	 * Handles casting a player vote when they make a selection in the GUI.
+	 * The vote is queued and counted with the other votes cast this tick.
 	 *
 	 * @param event The InventoryGUISelectEvent.
 	 */
 	@EventHandler
 	public void onPardonSelect(InventoryGUISelectEvent event) {
+		if (event.getSelectedValue() instanceof VoteGUI.Control) {
+			VoteGUI.handleControl(event.getPlayer(), (VoteGUI.Control) event.getSelectedValue());
+			return;
+		}
+
 		UUID pardonUUID = (UUID) event.getSelectedValue();
-		PunishedPlayer punishedPlayer = PunishManager.getPunishedPlayer(pardonUUID);
-		if (punishedPlayer != null) {
-			PunishManager.playerPardonVote(punishedPlayer, event.getPlayer());
+		if (PunishManager.getPunishedPlayer(pardonUUID) != null) {
+			VoteQueue.submit(pardonUUID, event.getPlayer());
 		} else {
 			event.getPlayer().sendMessage(ChatColor.GREEN + "That player has just been pardoned.");
 		}
 	}
 
+	/**
+	 * Stops updating the player's vote GUI once it is closed.
+	 *
+	 * @param event The Bukkit inventory close event.
+	 */
+	@EventHandler
+	public void onInventoryClose(InventoryCloseEvent event) {
+		VoteGUISubscriptions.unsubscribe(event.getPlayer().getUniqueId());
+	}
+
+	/**
+	 * Marks the player as an online voter, so they are told when players they voted for are pardoned, and refreshes
+	 * their resolved username.
+	 *
+	 * @param event The Bukkit join event.
+	 */
+	@EventHandler
+	public void onPlayerJoin(PlayerJoinEvent event) {
+		VoterIndex.setOnline(event.getPlayer());
+		BatchNameResolver.update(event.getPlayer());
+	}
+
+	/**
+	 * Stops updating the player's vote GUI and forgets their page once they leave.
+	 *
+	 * @param event The Bukkit quit event.
+	 */
+	@EventHandler
+	public void onPlayerQuit(PlayerQuitEvent event) {
+		VoteGUISubscriptions.unsubscribe(event.getPlayer().getUniqueId());
+		VoteGUI.removePageState(event.getPlayer().getUniqueId());
+		VoterIndex.setOffline(event.getPlayer().getUniqueId());
+	}
+
 }
@@ -26,9 +26,24 @@ public class LoggedPlayer {
 		this.loggedPunishments = new ArrayList<>();
 	}
 
-	private LoggedPlayer(UUID uuid, ArrayList<LoggedPunishment> loggedPunishments) {
+	/**
+	 * Creates a LoggedPlayer with previously stored punishments.
+	 *
+	 * @param uuid The Minecraft UUID of the player.
+	 * @param loggedPunishments The punishments the player has received.
+	 */
+	public LoggedPlayer(UUID uuid, Collection<LoggedPunishment> loggedPunishments) {
 		this.uuid = uuid;
-		this.loggedPunishments = loggedPunishments;
+		this.loggedPunishments = new ArrayList<>(loggedPunishments);
+	}
+
+	/**
+	 * Gets the Minecraft UUID of the player.
+	 *
+	 * @return The player's UUID.
+	 */
+	public UUID getUUID() {
+		return uuid;
 	}
 
 	/**
@@ -40,6 +55,15 @@ public class LoggedPlayer {
 		return (Collection<LoggedPunishment>) loggedPunishments.clone();
 	}
 
+	/**
+	 * Gets the number of punishments the player has received.
+	 *
+	 * @return The number of logged punishments.
+	 */
+	public int getPunishmentCount() {
+		return loggedPunishments.size();
+	}
+
 	/**
 	 * Logs the punishment.
 	 *
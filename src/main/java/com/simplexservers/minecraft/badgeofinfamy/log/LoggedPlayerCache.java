@@ -0,0 +1,158 @@
+package com.simplexservers.minecraft.badgeofinfamy.log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A least-recently-used cache of LoggedPlayers bounded by the total number of punishments held.
+ * The cache IS thread-safe.
+ */
+public class LoggedPlayerCache {
+
+	/**
+	 * The maximum number of punishments held across all cached players.
+	 */
+	private final long maxWeight;
+	/**
+	 * The cached players in access order, least recently used first.
+	 */
+	private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/**
+	 * The number of punishments currently held.
+	 */
+	private long weight = 0;
+
+	private long hitCount = 0;
+	private long missCount = 0;
+	private long evictionCount = 0;
+
+	/**
+	 * Creates a cache holding at most the given number of punishments.
+	 *
+	 * @param maxWeight The maximum number of punishments held.
+	 */
+	public LoggedPlayerCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Gets the cached player, counting the lookup as a hit or miss.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @return The cached player or null if the player is not cached.
+	 */
+	public synchronized LoggedPlayer get(UUID uuid) {
+		Entry entry = entries.get(uuid);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+
+		hitCount++;
+		return entry.player;
+	}
+
+	/**
+	 * Caches the player, evicting the least recently used players if the cache is over its limit.
+	 * If the player is already cached the existing instance is kept and returned.
+	 *
+	 * @param player The player to cache.
+	 * @return The cached instance for the player.
+	 */
+	public synchronized LoggedPlayer put(LoggedPlayer player) {
+		Entry existing = entries.get(player.getUUID());
+		if (existing != null) {
+			return existing.player;
+		}
+
+		Entry entry = new Entry(player);
+		entries.put(player.getUUID(), entry);
+		weight += entry.weight;
+		evict(player.getUUID());
+		return player;
+	}
+
+	/**
+	 * Updates the weight of the cached player after its punishments changed.
+	 *
+	 * @param uuid The UUID of the player.
+	 */
+	public synchronized void reweigh(UUID uuid) {
+		Entry entry = entries.get(uuid);
+		if (entry == null) {
+			return;
+		}
+
+		int newWeight = weigh(entry.player);
+		weight += newWeight - entry.weight;
+		entry.weight = newWeight;
+		evict(uuid);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Evicts the least recently used players until the cache is within its limit.
+	 *
+	 * @param keep The UUID of a player to never evict, the one just added or updated.
+	 */
+	private void evict(UUID keep) {
+		Iterator<Map.Entry<UUID, Entry>> it = entries.entrySet().iterator();
+		while (weight > maxWeight && it.hasNext()) {
+			Map.Entry<UUID, Entry> eldest = it.next();
+			if (eldest.getKey().equals(keep)) {
+				continue;
+			}
+
+			weight -= eldest.getValue().weight;
+			it.remove();
+			evictionCount++;
+		}
+	}
+
+	/**
+	 * Gets the weight of a player, the number of punishments it holds with a minimum of one.
+	 *
+	 * @param player The player to weigh.
+	 * @return The player's weight.
+	 */
+	private static int weigh(LoggedPlayer player) {
+		return Math.max(1, player.getPunishmentCount());
+	}
+
+	/**
+	 * A cached player and its weight when last weighed.
+	 */
+	private static class Entry {
+
+		private final LoggedPlayer player;
+		private int weight;
+
+		private Entry(LoggedPlayer player) {
+			this.player = player;
+			this.weight = weigh(player);
+		}
+
+	}
+
+}
@@ -2,17 +2,12 @@ package com.simplexservers.minecraft.badgeofinfamy.log;
 
 import com.simplexservers.minecraft.badgeofinfamy.Main;
 import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
-import org.bukkit.OfflinePlayer;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.HashMap;
+import org.bukkit.Bukkit;
+
+import java.util.Map;
 import java.util.UUID;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The manager of punishment logs.
@@ -20,103 +15,114 @@ import java.util.logging.Level;
 public class PunishLog {
 
 	/**
-	 * The directory of player logs.
+	 * The cache of logged players, created on first use with the size from the config.
 	 */
-	private static final File PLAYER_LOG_DIR = new File(Main.getInstance().getDataFolder(), "log");
-
+	private static LoggedPlayerCache loggedPlayers = null;
 	/**
-	 * The cache of logged players.
+	 * The asynchronous loads in progress, shared by concurrent lookups of the same player.
 	 */
-	public static HashMap<UUID, LoggedPlayer> loggedPlayers = new HashMap<>();
+	private static final Map<UUID, CompletableFuture<LoggedPlayer>> pendingLoads = new ConcurrentHashMap<>();
 
 	/**
 	 * Handles logging and saving the currently punished player.
+	 * The punishment is appended to the store without loading the player's history, which is only updated in memory
+	 * if it is cached or being loaded.
 	 *
 	 * @param punishedPlayer The punished player to log.
 	 */
 	public static void logPunishment(PunishedPlayer punishedPlayer) {
-		LoggedPlayer loggedPlayer = getLoggedPlayer(punishedPlayer.getPlayerUUID());
-		loggedPlayer.logPunishment(new LoggedPunishment(punishedPlayer));
-		saveLoggedPlayer(punishedPlayer.getPlayerUUID());
-	}
-
-	/**
-	 * Saves the LoggedPlayer with the given UUID.
-	 *
-	 * @param uuid The UUID of the player to save.
-	 */
-	public static void saveLoggedPlayer(UUID uuid) {
-		if (!loggedPlayers.containsKey(uuid)) {
-			// If it's not in the cache then there's nothing to save
-			return;
-		}
-		LoggedPlayer player = loggedPlayers.get(uuid);
+		UUID uuid = punishedPlayer.getPlayerUUID();
+		LoggedPunishment punishment = new LoggedPunishment(punishedPlayer);
+		Main.getInstance().getHistoryStore().append(uuid, punishment);
 
-		File playerLogFile = getPlayerLogFile(uuid);
-		if (!playerLogFile.exists()) {
-			playerLogFile.getParentFile().mkdirs();
+		LoggedPlayer loggedPlayer = getCache().get(uuid);
+		if (loggedPlayer != null) {
+			addPunishment(loggedPlayer, punishment);
 		}
 
-		try (FileWriter writer = new FileWriter(playerLogFile)) {
-			player.serializeJSON().writeJSONString(writer);
-		} catch (IOException e) {
-			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred saving the player punishment log.", e);
+		// A load in progress may have read the history before the punishment was appended
+		CompletableFuture<LoggedPlayer> pendingLoad = pendingLoads.get(uuid);
+		if (pendingLoad != null) {
+			pendingLoad.thenAccept(loadedPlayer -> addPunishment(loadedPlayer, punishment));
 		}
 	}
 
 	/**
-	 * Gets the LoggedPlayer that represents the given Bukkit player.
-	 * If a LoggedPlayer does not yet exist, one will be created.
+	 * Adds the punishment to the cached player's history, unless it is already in it.
 	 *
-	 * @param player The Bukkit player to use to get the LoggedPlayer.
-	 * @return The LoggedPlayer matching the Bukkit player.
+	 * @param loggedPlayer The cached player.
+	 * @param punishment The punishment to add.
 	 */
-	public static LoggedPlayer getLoggedPlayer(OfflinePlayer player) {
-		return getLoggedPlayer(player.getUniqueId());
+	private static void addPunishment(LoggedPlayer loggedPlayer, LoggedPunishment punishment) {
+		for (LoggedPunishment logged : loggedPlayer.getLoggedPunishments()) {
+			if (logged.getDateTime() == punishment.getDateTime() && logged.getReason().equals(punishment.getReason())) {
+				return;
+			}
+		}
+
+		loggedPlayer.logPunishment(punishment);
+		getCache().reweigh(loggedPlayer.getUUID());
 	}
 
 	/**
-	 * Gets the LoggedPlayer with the given UUID.
-	 * If a LoggedPlayer does not yet exist, one will b ecreated.
+	 * Gets the LoggedPlayer with the given UUID without blocking the server thread.
+	 * On a cache miss the player is loaded from the store asynchronously, and lookups of the same player made while
+	 * the load is in progress share it. The returned future is always completed on the server thread.
 	 *
 	 * @param uuid The Minecraft UUID of the player to get.
-	 * @return The LoggedPlayer with the given UUID.
+	 * @return The future completed with the LoggedPlayer with the given UUID.
 	 */
-	public static LoggedPlayer getLoggedPlayer(UUID uuid) {
-		if (!loggedPlayers.containsKey(uuid)) {
-			File playerLogFile = getPlayerLogFile(uuid);
-			LoggedPlayer player = null;
-			if (playerLogFile.exists()) {
-				// Load the LoggedPlayer from the file & cache
-				JSONParser parser = new JSONParser();
-
-				try (FileReader reader = new FileReader(playerLogFile)) {
-					JSONObject json = (JSONObject) parser.parse(reader);
-					player = LoggedPlayer.deserializeJSON(json);
-				} catch (Exception e) {
-					Main.getInstance().getLogger().log(Level.WARNING, "An error occurred parsing a player punshment log.", e);
-				}
-			}
-
-			if (player == null) {
-				player = new LoggedPlayer(uuid);
-			}
-
-			loggedPlayers.put(uuid, player);
-			return player;
+	public static CompletableFuture<LoggedPlayer> getLoggedPlayerAsync(UUID uuid) {
+		LoggedPlayer cached = getCache().get(uuid);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
 		}
 
-		return loggedPlayers.get(uuid);
+		return pendingLoads.computeIfAbsent(uuid, key -> {
+			CompletableFuture<LoggedPlayer> future = new CompletableFuture<>();
+
+			Bukkit.getScheduler().runTaskAsynchronously(Main.getInstance(), () -> {
+				LoggedPlayer player = null;
+				Throwable error = null;
+				try {
+					player = Main.getInstance().getHistoryStore().load(uuid);
+					if (player == null) {
+						player = new LoggedPlayer(uuid);
+					}
+
+					// Keep a player cached while loading, which may already have new punishments
+					player = getCache().put(player);
+				} catch (Throwable e) {
+					error = e;
+				}
+
+				LoggedPlayer loadedPlayer = player;
+				Throwable loadError = error;
+				Bukkit.getScheduler().runTask(Main.getInstance(), () -> {
+					pendingLoads.remove(uuid);
+					if (loadError != null) {
+						future.completeExceptionally(loadError);
+					} else {
+						future.complete(loadedPlayer);
+					}
+				});
+			});
+
+			return future;
+		});
 	}
 
 	/**
-	 * Gets the log file for the given player.
+	 * Gets the cache of logged players.
 	 *
-	 * @param uuid The UUID of the player to get the log file for.
-	 * @return The log file for the player with the UUID.
+	 * @return The logged player cache.
 	 */
-	private static File getPlayerLogFile(UUID uuid) {
-		return new File(PLAYER_LOG_DIR, uuid.toString() + ".json");
+	public static synchronized LoggedPlayerCache getCache() {
+		if (loggedPlayers == null) {
+			loggedPlayers = new LoggedPlayerCache(Main.getInstance().getPluginConfig().HISTORY_CACHE_SIZE);
+		}
+
+		return loggedPlayers;
 	}
 
 }
@@ -17,8 +17,12 @@ public class PunishPrompt extends Prompt {
 	private PunishPromptCallback callback;
 
 	public PunishPrompt(Player punisher, OfflinePlayer player, ChatListener listener, PunishPromptCallback callback) {
+		this(punisher, new PunishedPlayerBuilder(player), listener, callback);
+	}
+
+	public PunishPrompt(Player punisher, PunishedPlayerBuilder playerBuilder, ChatListener listener, PunishPromptCallback callback) {
 		super(new BukkitCommandInvoker(punisher));
-		this.playerBuilder = new PunishedPlayerBuilder(player);
+		this.playerBuilder = playerBuilder;
 		this.listener = listener;
 		this.callback = callback;
 	}
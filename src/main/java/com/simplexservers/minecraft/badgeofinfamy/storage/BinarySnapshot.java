@@ -0,0 +1,363 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The versioned binary snapshot formats for the punished players and player settings.
+ * UUIDs are stored as two longs, strings are dictionary encoded and snapshots are read through a memory-mapped buffer.
+ *
+ * <pre>
+ * Punished players:
+ *   int magic, int version
+ *   int dictionarySize, { int length, byte[length] utf8 } * dictionarySize
+ *   int playerCount, {
+ *     long uuidMost, long uuidLeast, int reason, long chatSpeakTime, long voteOpenTime, int requiredVotes,
+ *     int groupCount, int[groupCount] groups, int voterCount, { long uuidMost, long uuidLeast } * voterCount
+ *   } * playerCount
+ *
+ * Player settings:
+ *   int magic, int version, int recordCount, { long uuidMost, long uuidLeast, long flags } * recordCount
+ *   Records are fixed size so they can be updated in place, and a record with a zero UUID is cleared.
+ * </pre>
+ */
+public class BinarySnapshot {
+
+	/**
+	 * The magic number identifying a punished players snapshot, "BOIP".
+	 */
+	public static final int PUNISHED_PLAYERS_MAGIC = 0x424F4950;
+	/**
+	 * The magic number identifying a player settings snapshot, "BOIS".
+	 */
+	public static final int PLAYER_SETTINGS_MAGIC = 0x424F4953;
+	/**
+	 * The current version of the snapshot formats.
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * The size in bytes of the player settings header.
+	 */
+	public static final int PLAYER_SETTINGS_HEADER_SIZE = 12;
+	/**
+	 * The size in bytes of a single player settings record.
+	 */
+	public static final int PLAYER_SETTINGS_RECORD_SIZE = 24;
+
+	/**
+	 * Encodes the punished players into a snapshot.
+	 *
+	 * @param punishedPlayers The punished players to encode.
+	 * @return The encoded snapshot.
+	 */
+	public static byte[] encodePunishedPlayers(Collection<PunishedPlayer> punishedPlayers) {
+		// Build the dictionary of reasons and group names
+		Map<String, Integer> dictionary = new LinkedHashMap<>();
+		for (PunishedPlayer punishedPlayer : punishedPlayers) {
+			dictionary.putIfAbsent(punishedPlayer.getReason(), dictionary.size());
+			for (String group : punishedPlayer.getPreviousGroups()) {
+				dictionary.putIfAbsent(group, dictionary.size());
+			}
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(PUNISHED_PLAYERS_MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(dictionary.size());
+			for (String value : dictionary.keySet()) {
+				byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(utf8.length);
+				out.write(utf8);
+			}
+
+			out.writeInt(punishedPlayers.size());
+			for (PunishedPlayer punishedPlayer : punishedPlayers) {
+				writeUUID(out, punishedPlayer.getPlayerUUID());
+				out.writeInt(dictionary.get(punishedPlayer.getReason()));
+				out.writeLong(punishedPlayer.getChatSpeakTime());
+				out.writeLong(punishedPlayer.getVoteOpenTime());
+				out.writeInt(punishedPlayer.getRequiredVotes());
+
+				String[] groups = punishedPlayer.getPreviousGroups();
+				out.writeInt(groups.length);
+				for (String group : groups) {
+					out.writeInt(dictionary.get(group));
+				}
+
+				UUID[] voters = punishedPlayer.getVoters().toArray(new UUID[0]);
+				out.writeInt(voters.length);
+				for (UUID voter : voters) {
+					writeUUID(out, voter);
+				}
+			}
+		} catch (IOException e) {
+			// Writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads the punished players from a snapshot file.
+	 *
+	 * @param file The snapshot file.
+	 * @param punishedPlayers The map to load the punished players into.
+	 * @throws IOException If the file could not be read or is not a valid snapshot.
+	 */
+	public static void readPunishedPlayers(File file, Map<UUID, PunishedPlayer> punishedPlayers) throws IOException {
+		ByteBuffer buffer = map(file);
+
+		try {
+			checkHeader(buffer, PUNISHED_PLAYERS_MAGIC, file);
+
+			String[] dictionary = new String[buffer.getInt()];
+			for (int i = 0; i < dictionary.length; i++) {
+				byte[] utf8 = new byte[buffer.getInt()];
+				buffer.get(utf8);
+				dictionary[i] = new String(utf8, StandardCharsets.UTF_8);
+			}
+
+			int playerCount = buffer.getInt();
+			for (int i = 0; i < playerCount; i++) {
+				UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+				String reason = dictionary[buffer.getInt()];
+				long chatSpeakTime = buffer.getLong();
+				long voteOpenTime = buffer.getLong();
+				int requiredVotes = buffer.getInt();
+
+				String[] groups = new String[buffer.getInt()];
+				for (int j = 0; j < groups.length; j++) {
+					groups[j] = dictionary[buffer.getInt()];
+				}
+
+				int voterCount = buffer.getInt();
+				List<UUID> voters = new ArrayList<>(voterCount);
+				for (int j = 0; j < voterCount; j++) {
+					voters.add(new UUID(buffer.getLong(), buffer.getLong()));
+				}
+
+				punishedPlayers.put(uuid, PunishedPlayer.restore(uuid, reason, chatSpeakTime, voteOpenTime, requiredVotes, voters, groups));
+			}
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IOException("The snapshot " + file.getName() + " is truncated or corrupt.", e);
+		}
+	}
+
+	/**
+	 * Encodes the player settings into a snapshot.
+	 *
+	 * @param flags The setting flags of each player.
+	 * @return The encoded snapshot.
+	 */
+	public static byte[] encodePlayerSettings(Map<UUID, Long> flags) {
+		ByteBuffer buffer = ByteBuffer.allocate(PLAYER_SETTINGS_HEADER_SIZE + flags.size() * PLAYER_SETTINGS_RECORD_SIZE);
+		buffer.putInt(PLAYER_SETTINGS_MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(flags.size());
+
+		for (Map.Entry<UUID, Long> entry : flags.entrySet()) {
+			buffer.putLong(entry.getKey().getMostSignificantBits());
+			buffer.putLong(entry.getKey().getLeastSignificantBits());
+			buffer.putLong(entry.getValue());
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Reads the player settings from a snapshot file. Records cleared with a zero UUID are skipped.
+	 *
+	 * @param file The snapshot file.
+	 * @param flags The map to load the setting flags of each player into.
+	 * @param slots The map to load the record index of each player into.
+	 * @return The number of records in the file, including cleared records.
+	 * @throws IOException If the file could not be read or is not a valid snapshot.
+	 */
+	public static int readPlayerSettings(File file, UUIDLongMap flags, UUIDLongMap slots) throws IOException {
+		ByteBuffer buffer = map(file);
+
+		try {
+			checkHeader(buffer, PLAYER_SETTINGS_MAGIC, file);
+
+			int recordCount = buffer.getInt();
+			for (int i = 0; i < recordCount; i++) {
+				long uuidMost = buffer.getLong();
+				long uuidLeast = buffer.getLong();
+				long recordFlags = buffer.getLong();
+				if (uuidMost == 0 && uuidLeast == 0) {
+					continue;
+				}
+
+				UUID uuid = new UUID(uuidMost, uuidLeast);
+				flags.put(uuid, recordFlags);
+				slots.put(uuid, i);
+			}
+
+			return recordCount;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("The snapshot " + file.getName() + " is truncated or corrupt.", e);
+		}
+	}
+
+	/**
+	 * Reads the setting flags of a single player settings record.
+	 *
+	 * @param file The snapshot file.
+	 * @param slot The record index.
+	 * @param uuid The UUID of the player the record is expected to belong to.
+	 * @return The setting flags, or 0 if the record does not belong to the player.
+	 * @throws IOException If the record could not be read.
+	 */
+	public static long readPlayerSettingsRecord(File file, int slot, UUID uuid) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer record = ByteBuffer.allocate(PLAYER_SETTINGS_RECORD_SIZE);
+			long position = PLAYER_SETTINGS_HEADER_SIZE + (long) slot * PLAYER_SETTINGS_RECORD_SIZE;
+			while (record.hasRemaining()) {
+				int read = channel.read(record, position + record.position());
+				if (read == -1) {
+					throw new IOException("The snapshot " + file.getName() + " is truncated or corrupt.");
+				}
+			}
+			record.flip();
+
+			if (record.getLong() != uuid.getMostSignificantBits() || record.getLong() != uuid.getLeastSignificantBits()) {
+				return 0L;
+			}
+			return record.getLong();
+		}
+	}
+
+	/**
+	 * Writes player settings records in place, creating the file if it does not exist.
+	 * A record with a null UUID is cleared so it is skipped on load and can be reused.
+	 *
+	 * @param file The snapshot file.
+	 * @param recordCount The number of records in the file after the write.
+	 * @param slots The record index of each record to write.
+	 * @param uuids The UUID of each record to write, or null to clear the record.
+	 * @param flags The setting flags of each record to write.
+	 * @throws IOException If the records could not be written.
+	 */
+	public static void writePlayerSettingsRecords(File file, int recordCount, int[] slots, UUID[] uuids, long[] flags) throws IOException {
+		file.getParentFile().mkdirs();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			ByteBuffer record = ByteBuffer.allocate(PLAYER_SETTINGS_RECORD_SIZE);
+			for (int i = 0; i < slots.length; i++) {
+				record.clear();
+				record.putLong(uuids[i] != null ? uuids[i].getMostSignificantBits() : 0);
+				record.putLong(uuids[i] != null ? uuids[i].getLeastSignificantBits() : 0);
+				record.putLong(uuids[i] != null ? flags[i] : 0);
+				record.flip();
+				writeFully(channel, record, PLAYER_SETTINGS_HEADER_SIZE + (long) slots[i] * PLAYER_SETTINGS_RECORD_SIZE);
+			}
+
+			// Write the header last so a new record count never covers unwritten records
+			ByteBuffer header = ByteBuffer.allocate(PLAYER_SETTINGS_HEADER_SIZE);
+			header.putInt(PLAYER_SETTINGS_MAGIC);
+			header.putInt(VERSION);
+			header.putInt(recordCount);
+			header.flip();
+			writeFully(channel, header, 0);
+
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file and moves it over the previous snapshot.
+	 *
+	 * @param file The snapshot file.
+	 * @param snapshot The encoded snapshot.
+	 * @throws IOException If the snapshot could not be written.
+	 */
+	public static void write(File file, byte[] snapshot) throws IOException {
+		file.getParentFile().mkdirs();
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(tempFile)) {
+			out.write(snapshot);
+			out.getFD().sync();
+		}
+
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Writes the whole buffer to the channel at the position.
+	 *
+	 * @param channel The channel to write to.
+	 * @param buffer The buffer to write.
+	 * @param position The position in the file to write at.
+	 * @throws IOException If the buffer could not be written.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Memory-maps the snapshot file for reading.
+	 *
+	 * @param file The snapshot file.
+	 * @return The buffer over the file's contents.
+	 * @throws IOException If the file could not be mapped.
+	 */
+	private static ByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Checks that the buffer starts with the expected magic number and a supported version.
+	 *
+	 * @param buffer The snapshot buffer.
+	 * @param magic The expected magic number.
+	 * @param file The snapshot file, used in the error message.
+	 * @throws IOException If the header does not match.
+	 */
+	private static void checkHeader(ByteBuffer buffer, int magic, File file) throws IOException {
+		if (buffer.getInt() != magic) {
+			throw new IOException(file.getName() + " is not a BadgeOfInfamy snapshot.");
+		}
+
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException(file.getName() + " has unsupported snapshot version " + version + ".");
+		}
+	}
+
+	/**
+	 * Writes the UUID as two longs.
+	 *
+	 * @param out The stream to write to.
+	 * @param uuid The UUID to write.
+	 * @throws IOException If the UUID could not be written.
+	 */
+	private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException {
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPunishment;
+
+import java.util.UUID;
+
+/**
+ * Persists the punishment history of every player that has been punished.
+ */
+public interface HistoryStore {
+
+	/**
+	 * Loads the punishment history of the player.
+	 *
+	 * @param uuid The UUID of the player to load.
+	 * @return The player's history or null if the player has never been punished.
+	 */
+	LoggedPlayer load(UUID uuid);
+
+	/**
+	 * Records a new punishment in the player's history, without the history having to be loaded.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @param punishment The punishment to add.
+	 */
+	void append(UUID uuid, LoggedPunishment punishment);
+
+	/**
+	 * Writes any pending history and closes the store. Called when the plugin is disabled.
+	 */
+	void close();
+
+}
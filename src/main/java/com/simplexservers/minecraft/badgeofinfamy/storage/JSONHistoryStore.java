@@ -0,0 +1,88 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPunishment;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Stores the punishment history of each player in its own JSON file.
+ */
+public class JSONHistoryStore implements HistoryStore {
+
+	/**
+	 * The directory of player logs.
+	 */
+	private final File playerLogDir;
+
+	/**
+	 * Creates a store keeping the player logs in the directory.
+	 *
+	 * @param playerLogDir The directory of player logs.
+	 */
+	public JSONHistoryStore(File playerLogDir) {
+		this.playerLogDir = playerLogDir;
+	}
+
+	@Override
+	public LoggedPlayer load(UUID uuid) {
+		File playerLogFile = getPlayerLogFile(uuid);
+		if (!playerLogFile.exists()) {
+			return null;
+		}
+
+		JSONParser parser = new JSONParser();
+		try (FileReader reader = new FileReader(playerLogFile)) {
+			JSONObject json = (JSONObject) parser.parse(reader);
+			return LoggedPlayer.deserializeJSON(json);
+		} catch (Exception e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred parsing a player punshment log.", e);
+			return null;
+		}
+	}
+
+	@Override
+	public void append(UUID uuid, LoggedPunishment punishment) {
+		// Each player's history is one file, so it is rewritten with the punishment added
+		LoggedPlayer player = load(uuid);
+		if (player == null) {
+			player = new LoggedPlayer(uuid, Collections.emptyList());
+		}
+		player.logPunishment(punishment);
+
+		File playerLogFile = getPlayerLogFile(uuid);
+		if (!playerLogFile.exists()) {
+			playerLogFile.getParentFile().mkdirs();
+		}
+
+		try (FileWriter writer = new FileWriter(playerLogFile)) {
+			player.serializeJSON().writeJSONString(writer);
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred saving the player punishment log.", e);
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * Gets the log file for the given player.
+	 *
+	 * @param uuid The UUID of the player to get the log file for.
+	 * @return The log file for the player with the UUID.
+	 */
+	File getPlayerLogFile(UUID uuid) {
+		return new File(playerLogDir, uuid.toString() + ".json");
+	}
+
+}
@@ -0,0 +1,350 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * An append-only journal of changes to the punished players.
+ * Each punish, vote and free is appended as a single JSON line, and the journal is periodically compacted into a full
+ * binary snapshot of the punished players. All file writes happen on the write-behind queue's background writer.
+ */
+public class PunishJournal implements PunishStore {
+
+	/**
+	 * The binary snapshot of all punished players as of the last compaction.
+	 */
+	private final File snapshotFile;
+	/**
+	 * The journal of changes made since the last compaction.
+	 */
+	private final File journalFile;
+	/**
+	 * The JSON snapshot used before the binary format, migrated on load.
+	 */
+	private final File legacySnapshotFile;
+	/**
+	 * The queue of journal entries waiting to be written.
+	 */
+	private final WriteBehindQueue<Entry> writeQueue = new WriteBehindQueue<>("punished players journal", this::writeBatch);
+	/**
+	 * The writer appending to the journal. Only used by the background writer. null if the journal is not open.
+	 */
+	private BufferedWriter writer = null;
+	/**
+	 * The number of records submitted since the last compaction.
+	 */
+	private int recordCount = 0;
+
+	/**
+	 * Creates a journal storing its files in the directory.
+	 *
+	 * @param directory The directory holding the journal files.
+	 * @param name The base name of the journal files.
+	 */
+	public PunishJournal(File directory, String name) {
+		this.snapshotFile = new File(directory, name + ".dat");
+		this.journalFile = new File(directory, name + ".journal");
+		this.legacySnapshotFile = new File(directory, name + ".json");
+	}
+
+	@Override
+	public void recordPunish(PunishedPlayer punishedPlayer) {
+		JSONObject record = new JSONObject();
+		record.put("op", "punish");
+		record.put("player", punishedPlayer.serializeJSON());
+		append(record);
+	}
+
+	@Override
+	public void recordVote(UUID punishedUUID, UUID voterUUID) {
+		JSONObject record = new JSONObject();
+		record.put("op", "vote");
+		record.put("uuid", punishedUUID.toString());
+		record.put("voter", voterUUID.toString());
+		append(record);
+	}
+
+	@Override
+	public void recordFree(UUID punishedUUID) {
+		JSONObject record = new JSONObject();
+		record.put("op", "free");
+		record.put("uuid", punishedUUID.toString());
+		append(record);
+	}
+
+	@Override
+	public boolean needsCompaction() {
+		return recordCount >= Main.getInstance().getPluginConfig().JOURNAL_COMPACT_THRESHOLD;
+	}
+
+	/**
+	 * Queues a snapshot of the punished players to replace the journal.
+	 * Must be called with the complete current state so that the snapshot covers every record queued before it.
+	 *
+	 * @param punishedPlayers The current punished players.
+	 */
+	@Override
+	public void compact(Collection<PunishedPlayer> punishedPlayers) {
+		// Encode on the calling thread so the snapshot matches the journal position
+		byte[] snapshot = BinarySnapshot.encodePunishedPlayers(punishedPlayers);
+
+		writeQueue.submit(new Entry(null, snapshot));
+		recordCount = 0;
+	}
+
+	/**
+	 * Loads the snapshot and replays the journal on top of it. A JSON snapshot from before the binary format is
+	 * migrated to a binary snapshot.
+	 *
+	 * @param punishedPlayers The map to load the punished players into.
+	 */
+	@Override
+	public void load(Map<UUID, PunishedPlayer> punishedPlayers) {
+		boolean migrate = false;
+
+		if (snapshotFile.exists()) {
+			try {
+				BinarySnapshot.readPunishedPlayers(snapshotFile, punishedPlayers);
+			} catch (IOException e) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading the punished players.", e);
+			}
+		} else if (legacySnapshotFile.exists()) {
+			migrate = true;
+			JSONParser parser = new JSONParser();
+
+			try (FileReader reader = new FileReader(legacySnapshotFile)) {
+				JSONArray users = (JSONArray) parser.parse(reader);
+
+				users.forEach(playerObj -> {
+					try {
+						PunishedPlayer punishedPlayer = PunishedPlayer.deserializeJSON((JSONObject) playerObj);
+						punishedPlayers.put(punishedPlayer.getPlayerUUID(), punishedPlayer);
+					} catch (IllegalArgumentException e) {
+						Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading a punished player.", e);
+					}
+				});
+			} catch (Exception e) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading the punished players.", e);
+			}
+		}
+
+		recordCount = replay(journalFile, punishedPlayers);
+
+		if (migrate) {
+			compact(punishedPlayers.values());
+			Main.getInstance().getLogger().info("Migrating " + punishedPlayers.size() + " punished players from " +
+					legacySnapshotFile.getName() + " to " + snapshotFile.getName() + ".");
+		}
+	}
+
+	@Override
+	public void start() {
+		writeQueue.start(Main.getInstance().getPluginConfig().PERSISTENCE_FLUSH_INTERVAL * 20L);
+	}
+
+	@Override
+	public void close() {
+		writeQueue.stop();
+
+		synchronized (this) {
+			closeWriter();
+		}
+	}
+
+	@Override
+	public WriteBehindQueue<?> getWriteQueue() {
+		return writeQueue;
+	}
+
+	/**
+	 * Queues the record to be appended to the journal.
+	 *
+	 * @param record The record to append.
+	 */
+	private void append(JSONObject record) {
+		writeQueue.submit(new Entry(record, null));
+		recordCount++;
+	}
+
+	/**
+	 * Writes a batch of journal entries. Records are appended to the journal with a single flush, and snapshots
+	 * replace the journal written before them. If the server stops after a snapshot is written but before the journal
+	 * is removed, the journal is replayed over the snapshot, which is safe since records are idempotent.
+	 * If the batch fails, the records it appended are cut off the journal, so the retry does not append them twice.
+	 *
+	 * @param batch The entries to write in order.
+	 * @throws IOException If an entry could not be written. A PartialWriteException if a snapshot in the batch was
+	 * written, covering the entries before it.
+	 */
+	private synchronized void writeBatch(List<Entry> batch) throws IOException {
+		// The journal is flushed after every batch, so its length is where this batch's records start
+		long journalStart = journalFile.length();
+		int written = 0;
+		try {
+			for (int i = 0; i < batch.size(); i++) {
+				Entry entry = batch.get(i);
+				if (entry.snapshot != null) {
+					closeWriter();
+					BinarySnapshot.write(snapshotFile, entry.snapshot);
+
+					// Everything journaled so far is covered by the snapshot
+					Files.deleteIfExists(journalFile.toPath());
+					journalStart = 0;
+					written = i + 1;
+					continue;
+				}
+
+				if (writer == null) {
+					journalFile.getParentFile().mkdirs();
+					writer = new BufferedWriter(new FileWriter(journalFile, true));
+				}
+
+				writer.write(entry.record.toJSONString());
+				writer.newLine();
+			}
+
+			if (writer != null) {
+				writer.flush();
+			}
+		} catch (IOException e) {
+			closeWriter();
+			truncateJournal(journalStart);
+			throw written > 0 ? new WriteBehindQueue.PartialWriteException(written, e) : e;
+		}
+	}
+
+	/**
+	 * Cuts the journal back to the length it had before a failed batch, dropping the records the batch appended.
+	 *
+	 * @param length The length of the journal before the batch.
+	 */
+	private void truncateJournal(long length) {
+		if (!journalFile.exists()) {
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(length);
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "Could not remove a failed batch from the punished players journal, " +
+					"its records may be replayed twice.", e);
+		}
+	}
+
+	/**
+	 * Closes the journal writer.
+	 */
+	private void closeWriter() {
+		if (writer == null) {
+			return;
+		}
+
+		try {
+			writer.close();
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "Could not close the punished players journal.", e);
+		}
+		writer = null;
+	}
+
+	/**
+	 * Replays the records in the journal file onto the punished players.
+	 *
+	 * @param file The journal file to replay.
+	 * @param punishedPlayers The punished players to apply the records to.
+	 * @return The number of records replayed.
+	 */
+	private static int replay(File file, Map<UUID, PunishedPlayer> punishedPlayers) {
+		if (!file.exists()) {
+			return 0;
+		}
+
+		int count = 0;
+		JSONParser parser = new JSONParser();
+		try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+
+				try {
+					applyRecord((JSONObject) parser.parse(line), punishedPlayers);
+					count++;
+				} catch (Exception e) {
+					// A torn final line is expected if the server crashed mid-write
+					Main.getInstance().getLogger().log(Level.WARNING, "Skipping an unreadable punished players journal record.", e);
+				}
+			}
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred replaying the punished players journal.", e);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Applies a single journal record to the punished players.
+	 *
+	 * @param record The journal record.
+	 * @param punishedPlayers The punished players to apply the record to.
+	 * @throws IllegalArgumentException If the record could not be parsed.
+	 */
+	private static void applyRecord(JSONObject record, Map<UUID, PunishedPlayer> punishedPlayers) throws IllegalArgumentException {
+		String op = (String) record.get("op");
+		if ("punish".equals(op)) {
+			PunishedPlayer punishedPlayer = PunishedPlayer.deserializeJSON((JSONObject) record.get("player"));
+			punishedPlayers.put(punishedPlayer.getPlayerUUID(), punishedPlayer);
+		} else if ("vote".equals(op)) {
+			PunishedPlayer punishedPlayer = punishedPlayers.get(UUID.fromString((String) record.get("uuid")));
+			UUID voter = UUID.fromString((String) record.get("voter"));
+			if (punishedPlayer != null) {
+				punishedPlayer.castVote(voter);
+			}
+		} else if ("free".equals(op)) {
+			punishedPlayers.remove(UUID.fromString((String) record.get("uuid")));
+		} else {
+			throw new IllegalArgumentException("Unknown journal operation: " + op);
+		}
+	}
+
+	/**
+	 * A queued journal entry, either a single record or a full snapshot.
+	 */
+	private static class Entry {
+
+		/**
+		 * The record to append, or null if this is a snapshot.
+		 */
+		private final JSONObject record;
+		/**
+		 * The encoded snapshot replacing the journal, or null if this is a record.
+		 */
+		private final byte[] snapshot;
+
+		private Entry(JSONObject record, byte[] snapshot) {
+			this.record = record;
+			this.snapshot = snapshot;
+		}
+
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persists the state of the currently punished players.
+ * Changes are recorded as they happen and written in the background by the store's write-behind queue.
+ */
+public interface PunishStore {
+
+	/**
+	 * Loads the stored punished players.
+	 *
+	 * @param punishedPlayers The map to load the punished players into.
+	 */
+	void load(Map<UUID, PunishedPlayer> punishedPlayers);
+
+	/**
+	 * Starts writing recorded changes in the background.
+	 */
+	void start();
+
+	/**
+	 * Records the punishment of the player.
+	 *
+	 * @param punishedPlayer The player that was punished.
+	 */
+	void recordPunish(PunishedPlayer punishedPlayer);
+
+	/**
+	 * Records a pardon vote cast for the punished player.
+	 *
+	 * @param punishedUUID The UUID of the punished player being voted for.
+	 * @param voterUUID The UUID of the player that cast the vote.
+	 */
+	void recordVote(UUID punishedUUID, UUID voterUUID);
+
+	/**
+	 * Records the freeing of the punished player.
+	 *
+	 * @param punishedUUID The UUID of the player that was freed.
+	 */
+	void recordFree(UUID punishedUUID);
+
+	/**
+	 * Gets if enough changes have been recorded that the store should be compacted.
+	 *
+	 * @return true if the store should be compacted, false otherwise.
+	 */
+	boolean needsCompaction();
+
+	/**
+	 * Compacts the recorded changes into a snapshot of the punished players.
+	 *
+	 * @param punishedPlayers The complete current punished players.
+	 */
+	void compact(Collection<PunishedPlayer> punishedPlayers);
+
+	/**
+	 * Gets the queue of changes waiting to be written.
+	 *
+	 * @return The store's write-behind queue.
+	 */
+	WriteBehindQueue<?> getWriteQueue();
+
+	/**
+	 * Writes every pending change and closes the store. Called when the plugin is disabled.
+	 */
+	void close();
+
+}
@@ -0,0 +1,437 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPunishment;
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Stores the punished players, their pardon votes and the punishment history in a SQLite database.
+ * Changes are queued and written by the write-behind queue, with each batch committed as a single transaction.
+ */
+public class SQLiteStore implements PunishStore, HistoryStore {
+
+	/**
+	 * The statements creating the database schema.
+	 */
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS punished_players (uuid TEXT PRIMARY KEY, reason TEXT NOT NULL, chat_time INTEGER NOT NULL, " +
+					"vote_time INTEGER NOT NULL, required_votes INTEGER NOT NULL, groups TEXT NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS punished_players_vote_time ON punished_players (vote_time)",
+			"CREATE TABLE IF NOT EXISTS pardon_votes (punished_uuid TEXT NOT NULL, voter_uuid TEXT NOT NULL, " +
+					"PRIMARY KEY (punished_uuid, voter_uuid))",
+			"CREATE INDEX IF NOT EXISTS pardon_votes_voter ON pardon_votes (voter_uuid)",
+			"CREATE TABLE IF NOT EXISTS punishment_log (id INTEGER PRIMARY KEY AUTOINCREMENT, uuid TEXT NOT NULL, " +
+					"reason TEXT NOT NULL, date INTEGER NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS punishment_log_uuid_date ON punishment_log (uuid, date)",
+			"CREATE INDEX IF NOT EXISTS punishment_log_date ON punishment_log (date)",
+			"CREATE TABLE IF NOT EXISTS meta (key TEXT PRIMARY KEY, value TEXT NOT NULL)"
+	};
+
+	/**
+	 * The meta key recording that the punished players of the file store were imported.
+	 */
+	private static final String META_PLAYERS_IMPORTED = "legacy_players_imported";
+	/**
+	 * The meta key recording that the punishment history of the file store was imported.
+	 */
+	private static final String META_LOGS_IMPORTED = "legacy_logs_imported";
+
+	/**
+	 * The file store of punished players, imported the first time the database is used.
+	 */
+	private final PunishStore legacyPunishStore;
+	/**
+	 * The file store of punishment history, imported the first time the database is used.
+	 */
+	private final SegmentedHistoryStore legacyHistoryStore;
+	/**
+	 * The connection to the database. Every use must synchronize on it.
+	 */
+	private final Connection connection;
+	/**
+	 * The queue of database changes waiting to be written.
+	 */
+	private final WriteBehindQueue<Operation> writeQueue = new WriteBehindQueue<>("punishment database", this::writeBatch);
+
+	private final PreparedStatement upsertPlayer;
+	private final PreparedStatement deletePlayer;
+	private final PreparedStatement insertVote;
+	private final PreparedStatement deleteVotes;
+	private final PreparedStatement insertLog;
+	private final PreparedStatement selectLog;
+	private final PreparedStatement selectMeta;
+	private final PreparedStatement upsertMeta;
+
+	/**
+	 * If the store has been closed.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Opens the database, creating the schema if needed.
+	 *
+	 * @param databaseFile The SQLite database file.
+	 * @param legacyPunishStore The file store of punished players to import from.
+	 * @param legacyHistoryStore The file store of punishment history to import from. Opened only if needed.
+	 * @throws SQLException If the database could not be opened.
+	 */
+	public SQLiteStore(File databaseFile, PunishStore legacyPunishStore, SegmentedHistoryStore legacyHistoryStore) throws SQLException {
+		this.legacyPunishStore = legacyPunishStore;
+		this.legacyHistoryStore = legacyHistoryStore;
+
+		databaseFile.getParentFile().mkdirs();
+		connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("PRAGMA journal_mode=WAL");
+			statement.execute("PRAGMA synchronous=NORMAL");
+			for (String sql : SCHEMA) {
+				statement.execute(sql);
+			}
+		}
+
+		upsertPlayer = connection.prepareStatement("INSERT OR REPLACE INTO punished_players (uuid, reason, chat_time, vote_time, required_votes, groups) VALUES (?, ?, ?, ?, ?, ?)");
+		deletePlayer = connection.prepareStatement("DELETE FROM punished_players WHERE uuid = ?");
+		insertVote = connection.prepareStatement("INSERT OR IGNORE INTO pardon_votes (punished_uuid, voter_uuid) VALUES (?, ?)");
+		deleteVotes = connection.prepareStatement("DELETE FROM pardon_votes WHERE punished_uuid = ?");
+		insertLog = connection.prepareStatement("INSERT INTO punishment_log (uuid, reason, date) VALUES (?, ?, ?)");
+		selectLog = connection.prepareStatement("SELECT reason, date FROM punishment_log WHERE uuid = ? ORDER BY date, id");
+		selectMeta = connection.prepareStatement("SELECT value FROM meta WHERE key = ?");
+		upsertMeta = connection.prepareStatement("INSERT OR REPLACE INTO meta (key, value) VALUES (?, ?)");
+	}
+
+	@Override
+	public void load(Map<UUID, PunishedPlayer> punishedPlayers) {
+		try {
+			synchronized (connection) {
+				Map<UUID, List<UUID>> votes = new HashMap<>();
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT punished_uuid, voter_uuid FROM pardon_votes")) {
+					while (rs.next()) {
+						votes.computeIfAbsent(UUID.fromString(rs.getString(1)), uuid -> new ArrayList<>()).add(UUID.fromString(rs.getString(2)));
+					}
+				}
+
+				JSONParser parser = new JSONParser();
+				try (Statement statement = connection.createStatement();
+				     ResultSet rs = statement.executeQuery("SELECT uuid, reason, chat_time, vote_time, required_votes, groups FROM punished_players")) {
+					while (rs.next()) {
+						try {
+							UUID uuid = UUID.fromString(rs.getString(1));
+							JSONArray groupsArr = (JSONArray) parser.parse(rs.getString(6));
+							String[] groups = (String[]) groupsArr.toArray(new String[groupsArr.size()]);
+
+							PunishedPlayer punishedPlayer = PunishedPlayer.restore(uuid, rs.getString(2), rs.getLong(3), rs.getLong(4),
+									rs.getInt(5), votes.getOrDefault(uuid, Collections.emptyList()), groups);
+							punishedPlayers.put(uuid, punishedPlayer);
+						} catch (Exception e) {
+							Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading a punished player.", e);
+						}
+					}
+				}
+			}
+
+			importLegacyPunishedPlayers(punishedPlayers);
+			importLegacyLogs();
+		} catch (SQLException e) {
+			Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred loading the punished players.", e);
+		}
+	}
+
+	@Override
+	public void start() {
+		writeQueue.start(Main.getInstance().getPluginConfig().PERSISTENCE_FLUSH_INTERVAL * 20L);
+	}
+
+	@Override
+	public void recordPunish(PunishedPlayer punishedPlayer) {
+		// Capture the values now, the player may change before the write happens
+		String uuid = punishedPlayer.getPlayerUUID().toString();
+		String reason = punishedPlayer.getReason();
+		long chatSpeakTime = punishedPlayer.getChatSpeakTime();
+		long voteOpenTime = punishedPlayer.getVoteOpenTime();
+		int requiredVotes = punishedPlayer.getRequiredVotes();
+		Collection<UUID> voters = new ArrayList<>(punishedPlayer.getVoters());
+		JSONArray groupsArr = new JSONArray();
+		Collections.addAll(groupsArr, punishedPlayer.getPreviousGroups());
+		String groups = groupsArr.toJSONString();
+
+		writeQueue.submit(() -> {
+			upsertPlayer.setString(1, uuid);
+			upsertPlayer.setString(2, reason);
+			upsertPlayer.setLong(3, chatSpeakTime);
+			upsertPlayer.setLong(4, voteOpenTime);
+			upsertPlayer.setInt(5, requiredVotes);
+			upsertPlayer.setString(6, groups);
+			upsertPlayer.executeUpdate();
+
+			deleteVotes.setString(1, uuid);
+			deleteVotes.executeUpdate();
+			for (UUID voter : voters) {
+				insertVote.setString(1, uuid);
+				insertVote.setString(2, voter.toString());
+				insertVote.addBatch();
+			}
+			insertVote.executeBatch();
+		});
+	}
+
+	@Override
+	public void recordVote(UUID punishedUUID, UUID voterUUID) {
+		writeQueue.submit(() -> {
+			insertVote.setString(1, punishedUUID.toString());
+			insertVote.setString(2, voterUUID.toString());
+			insertVote.executeUpdate();
+		});
+	}
+
+	@Override
+	public void recordFree(UUID punishedUUID) {
+		writeQueue.submit(() -> {
+			deletePlayer.setString(1, punishedUUID.toString());
+			deletePlayer.executeUpdate();
+			deleteVotes.setString(1, punishedUUID.toString());
+			deleteVotes.executeUpdate();
+		});
+	}
+
+	@Override
+	public boolean needsCompaction() {
+		// Every change is written in place
+		return false;
+	}
+
+	@Override
+	public void compact(Collection<PunishedPlayer> punishedPlayers) {
+	}
+
+	@Override
+	public LoggedPlayer load(UUID uuid) {
+		// Make sure punishments still waiting in the queue are visible
+		writeQueue.flush();
+
+		List<LoggedPunishment> punishments = new ArrayList<>();
+		try {
+			synchronized (connection) {
+				selectLog.setString(1, uuid.toString());
+				try (ResultSet rs = selectLog.executeQuery()) {
+					while (rs.next()) {
+						punishments.add(new LoggedPunishment(rs.getString(1), rs.getLong(2)));
+					}
+				}
+			}
+		} catch (SQLException e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred loading a player punishment log.", e);
+			return null;
+		}
+
+		return punishments.isEmpty() ? null : new LoggedPlayer(uuid, punishments);
+	}
+
+	@Override
+	public void append(UUID uuid, LoggedPunishment punishment) {
+		writeQueue.submit(() -> {
+			insertLog.setString(1, uuid.toString());
+			insertLog.setString(2, punishment.getReason());
+			insertLog.setLong(3, punishment.getDateTime());
+			insertLog.executeUpdate();
+		});
+	}
+
+	@Override
+	public WriteBehindQueue<?> getWriteQueue() {
+		return writeQueue;
+	}
+
+	@Override
+	public void close() {
+		synchronized (connection) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+
+		writeQueue.stop();
+
+		synchronized (connection) {
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "Could not close the punishment database.", e);
+			}
+		}
+	}
+
+	/**
+	 * Writes a batch of operations in a single transaction.
+	 *
+	 * @param batch The operations to write in order.
+	 * @throws IOException If the transaction failed. None of the batch is written.
+	 */
+	private void writeBatch(List<Operation> batch) throws IOException {
+		synchronized (connection) {
+			try {
+				connection.setAutoCommit(false);
+				for (Operation operation : batch) {
+					operation.apply();
+				}
+				connection.commit();
+			} catch (SQLException e) {
+				try {
+					connection.rollback();
+				} catch (SQLException rollbackException) {
+					e.addSuppressed(rollbackException);
+				}
+				throw new IOException("The punishment database transaction failed.", e);
+			} finally {
+				try {
+					connection.setAutoCommit(true);
+				} catch (SQLException e) {
+					Main.getInstance().getLogger().log(Level.WARNING, "Could not reset the punishment database auto-commit.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Imports the punished players from the file store the first time the database is used. The import is recorded
+	 * in the meta table, so the file store is never imported again once its players have been pardoned.
+	 *
+	 * @param punishedPlayers The map to load the imported punished players into.
+	 * @throws SQLException If the database could not be queried.
+	 */
+	private void importLegacyPunishedPlayers(Map<UUID, PunishedPlayer> punishedPlayers) throws SQLException {
+		if (getMeta(META_PLAYERS_IMPORTED) != null) {
+			return;
+		}
+
+		// Databases from before the marker existed already imported if they have been used
+		if (punishedPlayers.isEmpty() && !hasRows("punishment_log")) {
+			legacyPunishStore.load(punishedPlayers);
+			punishedPlayers.values().forEach(this::recordPunish);
+			if (!punishedPlayers.isEmpty()) {
+				Main.getInstance().getLogger().info("Imported " + punishedPlayers.size() + " punished players into the punishment database.");
+			}
+		}
+
+		// Written after the imported players, so the marker is never committed without them
+		setMeta(META_PLAYERS_IMPORTED);
+		writeQueue.flush();
+	}
+
+	/**
+	 * Imports the punishment history from the file store the first time the database is used. The import is recorded
+	 * in the meta table.
+	 *
+	 * @throws SQLException If the database could not be queried.
+	 */
+	private void importLegacyLogs() throws SQLException {
+		if (getMeta(META_LOGS_IMPORTED) != null) {
+			return;
+		}
+		// Databases from before the marker existed already imported if they have any history
+		if (hasRows("punishment_log")) {
+			setMeta(META_LOGS_IMPORTED);
+			writeQueue.flush();
+			return;
+		}
+
+		try {
+			legacyHistoryStore.open();
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "Could not open the punishment log segments to import.", e);
+			return;
+		}
+
+		int imported = 0;
+		for (UUID uuid : legacyHistoryStore.getLoggedUUIDs()) {
+			LoggedPlayer player = legacyHistoryStore.load(uuid);
+			if (player != null) {
+				player.getLoggedPunishments().forEach(punishment -> append(player.getUUID(), punishment));
+				imported++;
+			}
+		}
+		legacyHistoryStore.close();
+		setMeta(META_LOGS_IMPORTED);
+		writeQueue.flush();
+
+		if (imported > 0) {
+			Main.getInstance().getLogger().info("Imported the punishment logs of " + imported + " players into the punishment database.");
+		}
+	}
+
+	/**
+	 * Gets a value from the meta table.
+	 *
+	 * @param key The key of the value.
+	 * @return The value, or null if it is not set.
+	 * @throws SQLException If the database could not be queried.
+	 */
+	private String getMeta(String key) throws SQLException {
+		synchronized (connection) {
+			selectMeta.setString(1, key);
+			try (ResultSet rs = selectMeta.executeQuery()) {
+				return rs.next() ? rs.getString(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * Queues the key to be set in the meta table, with the time it was set as its value.
+	 *
+	 * @param key The key to set.
+	 */
+	private void setMeta(String key) {
+		String value = String.valueOf(System.currentTimeMillis());
+		writeQueue.submit(() -> {
+			upsertMeta.setString(1, key);
+			upsertMeta.setString(2, value);
+			upsertMeta.executeUpdate();
+		});
+	}
+
+	/**
+	 * Gets if the table has any rows.
+	 *
+	 * @param table The name of the table.
+	 * @return true if the table has a row, false if it is empty.
+	 * @throws SQLException If the database could not be queried.
+	 */
+	private boolean hasRows(String table) throws SQLException {
+		synchronized (connection) {
+			try (Statement statement = connection.createStatement();
+			     ResultSet rs = statement.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+				return rs.next();
+			}
+		}
+	}
+
+	/**
+	 * A queued database change.
+	 */
+	private interface Operation {
+		void apply() throws SQLException;
+	}
+
+}
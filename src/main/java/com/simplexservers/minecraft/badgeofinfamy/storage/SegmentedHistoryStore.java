@@ -0,0 +1,638 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPlayer;
+import com.simplexservers.minecraft.badgeofinfamy.log.LoggedPunishment;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Stores the punishment history in append-only segment files.
+ * New punishments are appended to the active segment and located through an in-memory index of record offsets keyed
+ * by player UUID. Once enough segments have filled up, a background merger rewrites them with each player's history
+ * consolidated into a single record, so a history lookup is a single read.
+ *
+ * <pre>
+ * Record: int length, long uuidMost, long uuidLeast, int count,
+ *         { long date, int reasonLength, byte[reasonLength] utf8 } * count, int crc32
+ * </pre>
+ * The length covers everything after itself and the checksum covers the UUID through the last punishment.
+ */
+public class SegmentedHistoryStore implements HistoryStore {
+
+	/**
+	 * The size in bytes after which the active segment is sealed and a new one is started.
+	 */
+	public static final long SEGMENT_SIZE = 4L * 1024L * 1024L;
+	/**
+	 * The number of sealed segments that triggers a background merge.
+	 */
+	public static final int MERGE_THRESHOLD = 4;
+
+	private static final String SEGMENT_EXTENSION = ".seg";
+	private static final String MERGING_EXTENSION = ".merging";
+	private static final String MERGED_EXTENSION = ".merged";
+
+	/**
+	 * The directory holding the segment files.
+	 */
+	private final File segmentDir;
+	/**
+	 * The directory of per-player JSON logs imported the first time the store is opened.
+	 */
+	private final File legacyLogDir;
+	/**
+	 * Guards the segments and index. Reads share the lock, appends and the merger's swap hold it exclusively.
+	 */
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	/**
+	 * The open segments ordered by id. The last segment is the active one.
+	 */
+	private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+	/**
+	 * The locations of each player's records in append order, packed as segment id and offset.
+	 */
+	private final Map<UUID, long[]> index = new HashMap<>();
+	/**
+	 * If a merge is currently running.
+	 */
+	private volatile boolean merging = false;
+
+	/**
+	 * Creates a store keeping its segments in the directory. The store must be opened before use.
+	 *
+	 * @param segmentDir The directory holding the segment files.
+	 * @param legacyLogDir The directory of per-player JSON logs to import from.
+	 */
+	public SegmentedHistoryStore(File segmentDir, File legacyLogDir) {
+		this.segmentDir = segmentDir;
+		this.legacyLogDir = legacyLogDir;
+	}
+
+	/**
+	 * Opens the segments and builds the index by scanning them. The per-player JSON logs are imported if there are no
+	 * segments yet.
+	 *
+	 * @throws IOException If the segments could not be opened.
+	 */
+	public void open() throws IOException {
+		segmentDir.mkdirs();
+		recoverMerge();
+
+		File[] files = segmentDir.listFiles((dir, name) -> name.endsWith(SEGMENT_EXTENSION));
+		if (files != null) {
+			for (File file : files) {
+				int id = parseSegmentId(file.getName(), SEGMENT_EXTENSION);
+				if (id >= 0) {
+					segments.put(id, new Segment(id, file));
+				}
+			}
+		}
+
+		boolean importLegacy = segments.isEmpty();
+		if (importLegacy) {
+			segments.put(1, new Segment(1, segmentFile(1, SEGMENT_EXTENSION)));
+		}
+
+		for (Segment segment : segments.values()) {
+			scan(segment, segment == segments.lastEntry().getValue());
+		}
+
+		if (importLegacy) {
+			importLegacyLogs();
+		}
+	}
+
+	@Override
+	public LoggedPlayer load(UUID uuid) {
+		lock.readLock().lock();
+		try {
+			long[] locations = index.get(uuid);
+			if (locations == null) {
+				return null;
+			}
+
+			List<LoggedPunishment> punishments = new ArrayList<>();
+			for (long location : locations) {
+				Segment segment = segments.get(locationSegment(location));
+				readRecord(segment, locationOffset(location), uuid, punishments);
+			}
+
+			return new LoggedPlayer(uuid, punishments);
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred reading a player punishment log.", e);
+			return null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void append(UUID uuid, LoggedPunishment punishment) {
+		appendRecord(uuid, Collections.singletonList(punishment));
+	}
+
+	/**
+	 * Appends a record of the player's punishments to the active segment, starting a new segment if it's full.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @param punishments The punishments to append.
+	 */
+	private void appendRecord(UUID uuid, Collection<LoggedPunishment> punishments) {
+		byte[] record = encodeRecord(uuid, punishments);
+		boolean startMerge;
+
+		lock.writeLock().lock();
+		try {
+			// Appends can arrive after the store is closed while the plugin is disabling
+			if (segments.isEmpty()) {
+				Main.getInstance().getLogger().warning("The punishment log is closed, a punishment of " + uuid + " was not saved.");
+				return;
+			}
+
+			Segment active = segments.lastEntry().getValue();
+			if (active.size > 0 && active.size + record.length > SEGMENT_SIZE) {
+				int id = active.id + 1;
+				active = new Segment(id, segmentFile(id, SEGMENT_EXTENSION));
+				segments.put(id, active);
+			}
+
+			long offset = active.append(record);
+			addLocation(uuid, location(active.id, offset));
+			startMerge = !merging && segments.size() - 1 >= MERGE_THRESHOLD;
+			if (startMerge) {
+				merging = true;
+			}
+		} catch (IOException e) {
+			Main.getInstance().getLogger().log(Level.WARNING, "An error occurred saving the player punishment log.", e);
+			return;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (startMerge) {
+			new BukkitRunnable() {
+				@Override
+				public void run() {
+					try {
+						merge();
+					} catch (IOException e) {
+						Main.getInstance().getLogger().log(Level.WARNING, "An error occurred merging the punishment log segments.", e);
+					} finally {
+						merging = false;
+					}
+				}
+			}.runTaskAsynchronously(Main.getInstance());
+		}
+	}
+
+	/**
+	 * Gets the UUIDs of every player with a punishment history.
+	 *
+	 * @return The logged player UUIDs.
+	 */
+	public Set<UUID> getLoggedUUIDs() {
+		lock.readLock().lock();
+		try {
+			return new HashSet<>(index.keySet());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		lock.writeLock().lock();
+		try {
+			for (Segment segment : segments.values()) {
+				segment.close();
+			}
+			segments.clear();
+			index.clear();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges every sealed segment into a single segment holding one consolidated record per player.
+	 * Only the final swap holds the lock exclusively, so lookups and appends continue during the merge.
+	 *
+	 * @throws IOException If the merged segment could not be written.
+	 */
+	private void merge() throws IOException {
+		// Snapshot the sealed segments and the records they hold
+		List<Segment> sealed;
+		Map<UUID, List<Long>> sealedLocations = new LinkedHashMap<>();
+		lock.readLock().lock();
+		try {
+			if (segments.size() < 2) {
+				return;
+			}
+
+			sealed = new ArrayList<>(segments.headMap(segments.lastKey()).values());
+			int lastSealedId = sealed.get(sealed.size() - 1).id;
+			for (Map.Entry<UUID, long[]> entry : index.entrySet()) {
+				for (long location : entry.getValue()) {
+					if (locationSegment(location) <= lastSealedId) {
+						sealedLocations.computeIfAbsent(entry.getKey(), uuid -> new ArrayList<>()).add(location);
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		// Sealed segments are never written to, so they can be read without holding the lock
+		int mergedId = sealed.get(sealed.size() - 1).id;
+		File mergingFile = segmentFile(mergedId, MERGING_EXTENSION);
+		Map<UUID, Long> mergedOffsets = new HashMap<>();
+		try (FileChannel out = FileChannel.open(mergingFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			long offset = 0;
+			for (Map.Entry<UUID, List<Long>> entry : sealedLocations.entrySet()) {
+				List<LoggedPunishment> punishments = new ArrayList<>();
+				for (long location : entry.getValue()) {
+					readRecord(segmentById(sealed, locationSegment(location)), locationOffset(location), entry.getKey(), punishments);
+				}
+
+				ByteBuffer record = ByteBuffer.wrap(encodeRecord(entry.getKey(), punishments));
+				mergedOffsets.put(entry.getKey(), offset);
+				while (record.hasRemaining()) {
+					offset += out.write(record, offset);
+				}
+			}
+			out.force(true);
+		}
+
+		// Mark the merge complete before removing its inputs, see recoverMerge()
+		File mergedFile = segmentFile(mergedId, MERGED_EXTENSION);
+		Files.move(mergingFile.toPath(), mergedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+		lock.writeLock().lock();
+		try {
+			if (segments.isEmpty()) {
+				// Closed during the merge, the merged segment is picked up by recoverMerge() on the next open
+				return;
+			}
+
+			for (Map.Entry<UUID, Long> entry : mergedOffsets.entrySet()) {
+				long[] locations = index.get(entry.getKey());
+				long[] newer = Arrays.stream(locations).filter(location -> locationSegment(location) > mergedId).toArray();
+
+				long[] merged = new long[newer.length + 1];
+				merged[0] = location(mergedId, entry.getValue());
+				System.arraycopy(newer, 0, merged, 1, newer.length);
+				index.put(entry.getKey(), merged);
+			}
+
+			for (Segment segment : sealed) {
+				segment.close();
+				segments.remove(segment.id);
+				Files.deleteIfExists(segment.file.toPath());
+			}
+
+			File segmentFile = segmentFile(mergedId, SEGMENT_EXTENSION);
+			Files.move(mergedFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			Segment mergedSegment = new Segment(mergedId, segmentFile);
+			mergedSegment.size = mergedSegment.channel.size();
+			segments.put(mergedId, mergedSegment);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Finishes or discards a merge interrupted by a server stop. An unfinished merge output is discarded, while a
+	 * finished one replaces the segments it was merged from.
+	 *
+	 * @throws IOException If the merge could not be recovered.
+	 */
+	private void recoverMerge() throws IOException {
+		File[] merging = segmentDir.listFiles((dir, name) -> name.endsWith(MERGING_EXTENSION));
+		if (merging != null) {
+			for (File file : merging) {
+				Files.delete(file.toPath());
+			}
+		}
+
+		File[] merged = segmentDir.listFiles((dir, name) -> name.endsWith(MERGED_EXTENSION));
+		if (merged != null) {
+			for (File file : merged) {
+				int mergedId = parseSegmentId(file.getName(), MERGED_EXTENSION);
+				File[] inputs = segmentDir.listFiles((dir, name) -> name.endsWith(SEGMENT_EXTENSION)
+						&& parseSegmentId(name, SEGMENT_EXTENSION) >= 0 && parseSegmentId(name, SEGMENT_EXTENSION) <= mergedId);
+				if (inputs != null) {
+					for (File input : inputs) {
+						Files.delete(input.toPath());
+					}
+				}
+
+				Files.move(file.toPath(), segmentFile(mergedId, SEGMENT_EXTENSION).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+		}
+	}
+
+	/**
+	 * Scans the segment's records into the index. A torn record at the end of the active segment is truncated.
+	 *
+	 * @param segment The segment to scan.
+	 * @param active If the segment is the active segment.
+	 * @throws IOException If the segment could not be read.
+	 */
+	private void scan(Segment segment, boolean active) throws IOException {
+		long fileSize = segment.channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+		readFully(segment.channel, buffer, 0);
+
+		long offset = 0;
+		while (offset < fileSize) {
+			try {
+				buffer.position((int) offset);
+				int length = buffer.getInt();
+				if (length <= 0 || offset + 4 + length > fileSize) {
+					break;
+				}
+
+				ByteBuffer record = buffer.slice();
+				record.limit(length);
+				UUID uuid = decodeRecord(record, null);
+
+				addLocation(uuid, location(segment.id, offset));
+				offset += 4 + length;
+			} catch (BufferUnderflowException | IOException e) {
+				break;
+			}
+		}
+
+		if (offset < fileSize) {
+			if (active) {
+				Main.getInstance().getLogger().warning("Truncating a partially written record in punishment log segment " + segment.file.getName() + ".");
+				segment.channel.truncate(offset);
+			} else {
+				Main.getInstance().getLogger().warning("Punishment log segment " + segment.file.getName() + " is corrupt after offset " + offset + ".");
+			}
+		}
+		segment.size = offset;
+	}
+
+	/**
+	 * Imports the per-player JSON logs into the segments.
+	 */
+	private void importLegacyLogs() {
+		File[] logFiles = legacyLogDir.listFiles((dir, name) -> name.endsWith(".json"));
+		if (logFiles == null || logFiles.length == 0) {
+			return;
+		}
+
+		JSONHistoryStore legacyStore = new JSONHistoryStore(legacyLogDir);
+		int imported = 0;
+		for (File logFile : logFiles) {
+			try {
+				UUID uuid = UUID.fromString(logFile.getName().substring(0, logFile.getName().length() - ".json".length()));
+				LoggedPlayer player = legacyStore.load(uuid);
+				if (player != null) {
+					appendRecord(uuid, player.getLoggedPunishments());
+					imported++;
+				}
+			} catch (IllegalArgumentException e) {
+				Main.getInstance().getLogger().log(Level.WARNING, "Skipping unrecognized player log " + logFile.getName(), e);
+			}
+		}
+
+		Main.getInstance().getLogger().info("Imported the punishment logs of " + imported + " players into " + segmentDir.getName() +
+				". The " + legacyLogDir.getName() + " directory is no longer used.");
+	}
+
+	/**
+	 * Reads a record and adds its punishments to the list.
+	 *
+	 * @param segment The segment holding the record.
+	 * @param offset The offset of the record in the segment.
+	 * @param uuid The UUID the record is expected to belong to.
+	 * @param punishments The list to add the punishments to.
+	 * @throws IOException If the record could not be read or is corrupt.
+	 */
+	private static void readRecord(Segment segment, long offset, UUID uuid, List<LoggedPunishment> punishments) throws IOException {
+		ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+		readFully(segment.channel, lengthBuffer, offset);
+		lengthBuffer.flip();
+
+		ByteBuffer record = ByteBuffer.allocate(lengthBuffer.getInt());
+		readFully(segment.channel, record, offset + 4);
+		record.flip();
+
+		try {
+			if (!uuid.equals(decodeRecord(record, punishments))) {
+				throw new IOException("The punishment log index points to another player's record.");
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("A punishment log record is truncated.", e);
+		}
+	}
+
+	/**
+	 * Encodes a record of the player's punishments.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @param punishments The punishments to encode.
+	 * @return The encoded record.
+	 */
+	private static byte[] encodeRecord(UUID uuid, Collection<LoggedPunishment> punishments) {
+		List<byte[]> reasons = new ArrayList<>(punishments.size());
+		int length = 16 + 4 + 4;
+		for (LoggedPunishment punishment : punishments) {
+			byte[] reason = punishment.getReason().getBytes(StandardCharsets.UTF_8);
+			reasons.add(reason);
+			length += 8 + 4 + reason.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(4 + length);
+		buffer.putInt(length);
+		buffer.putLong(uuid.getMostSignificantBits());
+		buffer.putLong(uuid.getLeastSignificantBits());
+		buffer.putInt(punishments.size());
+
+		int i = 0;
+		for (LoggedPunishment punishment : punishments) {
+			byte[] reason = reasons.get(i++);
+			buffer.putLong(punishment.getDateTime());
+			buffer.putInt(reason.length);
+			buffer.put(reason);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 4, length - 4);
+		buffer.putInt((int) crc.getValue());
+
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes a record, verifying its checksum.
+	 *
+	 * @param record The record, positioned after its length.
+	 * @param punishments The list to add the punishments to, or null to only verify the record.
+	 * @return The UUID of the player the record belongs to.
+	 * @throws IOException If the checksum does not match.
+	 */
+	private static UUID decodeRecord(ByteBuffer record, List<LoggedPunishment> punishments) throws IOException {
+		int start = record.position();
+		int length = record.remaining();
+		if (length < 24) {
+			throw new IOException("A punishment log record is too short.");
+		}
+
+		CRC32 crc = new CRC32();
+		ByteBuffer checked = record.duplicate();
+		checked.limit(start + length - 4);
+		crc.update(checked);
+		if ((int) crc.getValue() != record.getInt(start + length - 4)) {
+			throw new IOException("A punishment log record failed its checksum.");
+		}
+
+		UUID uuid = new UUID(record.getLong(), record.getLong());
+		if (punishments != null) {
+			int count = record.getInt();
+			for (int i = 0; i < count; i++) {
+				long date = record.getLong();
+				byte[] reason = new byte[record.getInt()];
+				record.get(reason);
+				punishments.add(new LoggedPunishment(new String(reason, StandardCharsets.UTF_8), date));
+			}
+		}
+
+		return uuid;
+	}
+
+	/**
+	 * Adds a record location to the player's index entry.
+	 *
+	 * @param uuid The UUID of the player.
+	 * @param location The packed location of the record.
+	 */
+	private void addLocation(UUID uuid, long location) {
+		long[] locations = index.get(uuid);
+		if (locations == null) {
+			locations = new long[] { location };
+		} else {
+			locations = Arrays.copyOf(locations, locations.length + 1);
+			locations[locations.length - 1] = location;
+		}
+		index.put(uuid, locations);
+	}
+
+	private File segmentFile(int id, String extension) {
+		return new File(segmentDir, String.format("%08d", id) + extension);
+	}
+
+	private static int parseSegmentId(String name, String extension) {
+		try {
+			return Integer.parseInt(name.substring(0, name.length() - extension.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static Segment segmentById(List<Segment> segments, int id) throws IOException {
+		for (Segment segment : segments) {
+			if (segment.id == id) {
+				return segment;
+			}
+		}
+		throw new IOException("Missing punishment log segment " + id + ".");
+	}
+
+	private static long location(int segmentId, long offset) {
+		return ((long) segmentId << 32) | offset;
+	}
+
+	private static int locationSegment(long location) {
+		return (int) (location >>> 32);
+	}
+
+	private static long locationOffset(long location) {
+		return location & 0xFFFFFFFFL;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Unexpected end of punishment log segment.");
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * An open segment file.
+	 */
+	private static class Segment {
+
+		private final int id;
+		private final File file;
+		private final FileChannel channel;
+		/**
+		 * The number of bytes of valid records in the segment.
+		 */
+		private long size = 0;
+
+		private Segment(int id, File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		}
+
+		/**
+		 * Appends the record to the end of the segment.
+		 *
+		 * @param record The encoded record.
+		 * @return The offset the record was written at.
+		 * @throws IOException If the record could not be written.
+		 */
+		private long append(byte[] record) throws IOException {
+			long offset = size;
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+			long position = offset;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			size = position;
+			return offset;
+		}
+
+		private void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				Main.getInstance().getLogger().log(Level.WARNING, "Could not close punishment log segment " + file.getName() + ".", e);
+			}
+		}
+
+	}
+
+}
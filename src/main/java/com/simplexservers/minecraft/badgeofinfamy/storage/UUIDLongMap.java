@@ -0,0 +1,266 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import java.util.UUID;
+
+/**
+ * An open-addressing hash map from UUIDs to primitive longs.
+ * Keys are stored as their two long halves in parallel arrays, so entries are not boxed.
+ * The map IS NOT thread-safe.
+ */
+public class UUIDLongMap {
+
+	/**
+	 * The minimum number of slots in the table.
+	 */
+	private static final int MIN_CAPACITY = 16;
+
+	/**
+	 * The most significant bits of the key in each slot.
+	 */
+	private long[] keysMost;
+	/**
+	 * The least significant bits of the key in each slot.
+	 */
+	private long[] keysLeast;
+	/**
+	 * The value in each slot.
+	 */
+	private long[] values;
+	/**
+	 * If each slot holds an entry.
+	 */
+	private boolean[] used;
+	/**
+	 * The number of entries in the map.
+	 */
+	private int size = 0;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public UUIDLongMap() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map sized to hold the expected number of entries without resizing.
+	 *
+	 * @param expectedSize The expected number of entries.
+	 */
+	public UUIDLongMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity * 3 < expectedSize * 4) {
+			capacity <<= 1;
+		}
+
+		allocate(capacity);
+	}
+
+	/**
+	 * Gets the value for the UUID.
+	 *
+	 * @param uuid The UUID to get the value for.
+	 * @param defaultValue The value returned if the UUID is not in the map.
+	 * @return The value for the UUID or the default value.
+	 */
+	public long get(UUID uuid, long defaultValue) {
+		int slot = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		return slot == -1 ? defaultValue : values[slot];
+	}
+
+	/**
+	 * Checks if the UUID is in the map.
+	 *
+	 * @param uuid The UUID to check.
+	 * @return true if the map holds a value for the UUID.
+	 */
+	public boolean containsKey(UUID uuid) {
+		return find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) != -1;
+	}
+
+	/**
+	 * Sets the value for the UUID.
+	 *
+	 * @param uuid The UUID to set the value for.
+	 * @param value The value.
+	 */
+	public void put(UUID uuid, long value) {
+		put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), value);
+	}
+
+	/**
+	 * Removes the UUID from the map.
+	 *
+	 * @param uuid The UUID to remove.
+	 * @return true if the UUID was in the map.
+	 */
+	public boolean remove(UUID uuid) {
+		int slot = find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+		if (slot == -1) {
+			return false;
+		}
+
+		// Shift back the entries that probed past the removed slot so lookups never stop early
+		int mask = used.length - 1;
+		int hole = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (!used[next]) {
+				break;
+			}
+
+			int home = hash(keysMost[next], keysLeast[next]) & mask;
+			boolean between = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+			if (between) {
+				continue;
+			}
+
+			keysMost[hole] = keysMost[next];
+			keysLeast[hole] = keysLeast[next];
+			values[hole] = values[next];
+			hole = next;
+		}
+
+		used[hole] = false;
+		size--;
+		return true;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes every entry from the map.
+	 */
+	public void clear() {
+		allocate(MIN_CAPACITY);
+		size = 0;
+	}
+
+	/**
+	 * Calls the consumer with each entry in the map.
+	 *
+	 * @param consumer The consumer of the entries.
+	 */
+	public void forEach(EntryConsumer consumer) {
+		for (int i = 0; i < used.length; i++) {
+			if (used[i]) {
+				consumer.accept(new UUID(keysMost[i], keysLeast[i]), values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Sets the value for the key, growing the table when it is three quarters full.
+	 *
+	 * @param most The most significant bits of the key.
+	 * @param least The least significant bits of the key.
+	 * @param value The value.
+	 */
+	private void put(long most, long least, long value) {
+		int mask = used.length - 1;
+		int slot = hash(most, least) & mask;
+		while (used[slot]) {
+			if (keysMost[slot] == most && keysLeast[slot] == least) {
+				values[slot] = value;
+				return;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		keysMost[slot] = most;
+		keysLeast[slot] = least;
+		values[slot] = value;
+		used[slot] = true;
+		size++;
+
+		if (size * 4 > used.length * 3) {
+			resize(used.length << 1);
+		}
+	}
+
+	/**
+	 * Finds the slot holding the key.
+	 *
+	 * @param most The most significant bits of the key.
+	 * @param least The least significant bits of the key.
+	 * @return The slot of the key or -1 if the key is not in the map.
+	 */
+	private int find(long most, long least) {
+		int mask = used.length - 1;
+		int slot = hash(most, least) & mask;
+		while (used[slot]) {
+			if (keysMost[slot] == most && keysLeast[slot] == least) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Rehashes every entry into a table with the capacity.
+	 *
+	 * @param capacity The new number of slots, a power of two.
+	 */
+	private void resize(int capacity) {
+		long[] oldMost = keysMost;
+		long[] oldLeast = keysLeast;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+
+		allocate(capacity);
+		size = 0;
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				put(oldMost[i], oldLeast[i], oldValues[i]);
+			}
+		}
+	}
+
+	/**
+	 * Allocates empty arrays for the table.
+	 *
+	 * @param capacity The number of slots, a power of two.
+	 */
+	private void allocate(int capacity) {
+		keysMost = new long[capacity];
+		keysLeast = new long[capacity];
+		values = new long[capacity];
+		used = new boolean[capacity];
+	}
+
+	/**
+	 * Mixes the two halves of a key into a hash.
+	 *
+	 * @param most The most significant bits of the key.
+	 * @param least The least significant bits of the key.
+	 * @return The hash of the key.
+	 */
+	private static int hash(long most, long least) {
+		long hash = most ^ least;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return (int) hash;
+	}
+
+	/**
+	 * A consumer of map entries.
+	 */
+	public interface EntryConsumer {
+
+		void accept(UUID uuid, long value);
+
+	}
+
+}
@@ -0,0 +1,210 @@
+package com.simplexservers.minecraft.badgeofinfamy.storage;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Collects pending writes and hands them to a single background writer at most once per interval, so a burst of
+ * changes results in a single write.
+ *
+ * @param <T> The type of the pending writes.
+ */
+public class WriteBehindQueue<T> {
+
+	/**
+	 * The writer handling a batch of pending writes.
+	 *
+	 * @param <T> The type of the pending writes.
+	 */
+	public interface BatchWriter<T> {
+		/**
+		 * Writes the batch in order.
+		 *
+		 * @param batch The pending writes.
+		 * @throws IOException If the batch failed. A PartialWriteException if some of the writes at the front of the
+		 * batch were written, otherwise none of the batch is written.
+		 */
+		void write(List<T> batch) throws IOException;
+	}
+
+	/**
+	 * Thrown by a writer that failed after writing some of the writes at the front of the batch.
+	 */
+	public static class PartialWriteException extends IOException {
+
+		/**
+		 * The number of writes at the front of the batch that were written.
+		 */
+		private final int writtenCount;
+
+		public PartialWriteException(int writtenCount, IOException cause) {
+			super(cause.getMessage(), cause);
+			this.writtenCount = writtenCount;
+		}
+
+		public int getWrittenCount() {
+			return writtenCount;
+		}
+
+	}
+
+	/**
+	 * The name of the queue used in log messages.
+	 */
+	private final String name;
+	/**
+	 * The writer the pending writes are handed to.
+	 */
+	private final BatchWriter<T> writer;
+	/**
+	 * The writes waiting to be flushed.
+	 */
+	private List<T> pending = new ArrayList<>();
+	/**
+	 * Held while a batch is being written so only one batch is written at a time.
+	 */
+	private final Object flushLock = new Object();
+	/**
+	 * The repeating task flushing the queue. null if not started.
+	 */
+	private BukkitTask flushTask = null;
+
+	/**
+	 * The number of writes submitted to the queue.
+	 */
+	private final AtomicLong submittedCount = new AtomicLong();
+	/**
+	 * The number of writes that have been written.
+	 */
+	private final AtomicLong writtenCount = new AtomicLong();
+	/**
+	 * The number of batches written.
+	 */
+	private final AtomicLong flushCount = new AtomicLong();
+
+	/**
+	 * Creates a new queue.
+	 *
+	 * @param name The name of the queue used in log messages.
+	 * @param writer The writer the pending writes are handed to.
+	 */
+	public WriteBehindQueue(String name, BatchWriter<T> writer) {
+		this.name = name;
+		this.writer = writer;
+	}
+
+	/**
+	 * Starts flushing the queue asynchronously on the given interval.
+	 *
+	 * @param intervalTicks The number of server ticks between flushes.
+	 */
+	public synchronized void start(long intervalTicks) {
+		if (flushTask != null) {
+			return;
+		}
+
+		flushTask = new BukkitRunnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}.runTaskTimerAsynchronously(Main.getInstance(), intervalTicks, intervalTicks);
+	}
+
+	/**
+	 * Stops the background flushing and flushes the remaining writes on the calling thread.
+	 */
+	public void stop() {
+		synchronized (this) {
+			if (flushTask != null) {
+				flushTask.cancel();
+				flushTask = null;
+			}
+		}
+
+		flush();
+	}
+
+	/**
+	 * Queues the write to be flushed with the next batch.
+	 *
+	 * @param write The pending write.
+	 */
+	public void submit(T write) {
+		synchronized (this) {
+			pending.add(write);
+		}
+		submittedCount.incrementAndGet();
+	}
+
+	/**
+	 * Writes all pending writes as a single batch. Writes that fail are kept at the front of the queue and retried on
+	 * the next flush, while writes the writer reports as written are not written again.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			List<T> batch;
+			synchronized (this) {
+				if (pending.isEmpty()) {
+					return;
+				}
+
+				batch = pending;
+				pending = new ArrayList<>();
+			}
+
+			try {
+				writer.write(batch);
+				writtenCount.addAndGet(batch.size());
+				flushCount.incrementAndGet();
+			} catch (IOException e) {
+				Main.getInstance().getLogger().log(Level.SEVERE, "An error occurred writing the " + name + ", will retry.", e);
+
+				if (e instanceof PartialWriteException) {
+					int written = ((PartialWriteException) e).getWrittenCount();
+					writtenCount.addAndGet(written);
+					batch = new ArrayList<>(batch.subList(written, batch.size()));
+				}
+				synchronized (this) {
+					batch.addAll(pending);
+					pending = batch;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of writes submitted to the queue.
+	 *
+	 * @return The submitted write count.
+	 */
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	/**
+	 * Gets the number of batches that have been written.
+	 *
+	 * @return The number of flushes.
+	 */
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	/**
+	 * Gets the number of writes that were merged into another write's batch instead of being written on their own.
+	 *
+	 * @return The coalesced write count.
+	 */
+	public long getCoalescedCount() {
+		return writtenCount.get() - flushCount.get();
+	}
+
+}
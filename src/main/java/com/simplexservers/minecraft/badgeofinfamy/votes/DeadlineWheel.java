@@ -0,0 +1,179 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel. Each level has 64 slots, and each slot of a level spans a full turn of the level
+ * below it. A deadline is placed in the lowest level that covers it and moves down a level each time its slot comes
+ * around, so scheduling, cancelling and advancing a tick are O(1) apart from the cascades.
+ * The wheel IS NOT thread-safe.
+ */
+public class DeadlineWheel {
+
+	/**
+	 * The number of bits of the tick used to pick a slot on each level.
+	 */
+	private static final int SLOT_BITS = 6;
+	/**
+	 * The number of slots on each level.
+	 */
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	/**
+	 * The number of levels, covering 2^36 ticks. Deadlines further out wait on the top level.
+	 */
+	private static final int LEVELS = 6;
+
+	/**
+	 * The deadlines in each slot of each level.
+	 */
+	private final List<List<Deadline>> slots = new ArrayList<>(LEVELS * SLOTS);
+	/**
+	 * The last tick that was processed.
+	 */
+	private long currentTick = 0;
+
+	public DeadlineWheel() {
+		for (int i = 0; i < LEVELS * SLOTS; i++) {
+			slots.add(new ArrayList<>());
+		}
+	}
+
+	/**
+	 * Schedules the callback to run at the tick. Ticks that have already passed run on the next tick.
+	 *
+	 * @param expiryTick The tick to run the callback at.
+	 * @param callback The callback to run.
+	 * @return The scheduled deadline.
+	 */
+	public Deadline schedule(long expiryTick, Runnable callback) {
+		Deadline deadline = new Deadline(Math.max(expiryTick, currentTick + 1), callback);
+		place(deadline);
+		return deadline;
+	}
+
+	/**
+	 * Advances the wheel up to the tick, running the callbacks of every deadline reached.
+	 *
+	 * @param tick The tick to advance to.
+	 */
+	public void advanceTo(long tick) {
+		while (currentTick < tick) {
+			tick();
+		}
+	}
+
+	public long getCurrentTick() {
+		return currentTick;
+	}
+
+	/**
+	 * Advances the wheel by a single tick.
+	 */
+	private void tick() {
+		currentTick++;
+
+		// Cascade the levels whose slot turned over, highest first so deadlines can fall through several levels
+		int cascadeLevel = 0;
+		while (cascadeLevel + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (cascadeLevel + 1))) - 1)) == 0) {
+			cascadeLevel++;
+		}
+		for (int level = cascadeLevel; level > 0; level--) {
+			List<Deadline> slot = slotAt(level, currentTick);
+			if (slot.isEmpty()) {
+				continue;
+			}
+
+			List<Deadline> cascading = new ArrayList<>(slot);
+			slot.clear();
+			for (Deadline deadline : cascading) {
+				if (!deadline.cancelled) {
+					place(deadline);
+				}
+			}
+		}
+
+		List<Deadline> slot = slotAt(0, currentTick);
+		if (slot.isEmpty()) {
+			return;
+		}
+
+		List<Deadline> expired = new ArrayList<>(slot);
+		slot.clear();
+		for (Deadline deadline : expired) {
+			if (deadline.cancelled) {
+				continue;
+			}
+
+			if (deadline.expiryTick > currentTick) {
+				// Beyond the top level and only passing through
+				place(deadline);
+				continue;
+			}
+
+			deadline.cancelled = true;
+			deadline.callback.run();
+		}
+	}
+
+	/**
+	 * Places the deadline in the lowest level covering the time left until it expires.
+	 *
+	 * @param deadline The deadline to place.
+	 */
+	private void place(Deadline deadline) {
+		long remaining = deadline.expiryTick - currentTick;
+		int level = 0;
+		while (level + 1 < LEVELS && remaining >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+
+		slotAt(level, deadline.expiryTick).add(deadline);
+	}
+
+	/**
+	 * Gets the slot of the level the tick falls in.
+	 *
+	 * @param level The level.
+	 * @param tick The tick.
+	 * @return The deadlines in the slot.
+	 */
+	private List<Deadline> slotAt(int level, long tick) {
+		int index = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+		return slots.get(level * SLOTS + index);
+	}
+
+	/**
+	 * A scheduled callback.
+	 */
+	public static class Deadline {
+
+		/**
+		 * The tick the callback runs at.
+		 */
+		private final long expiryTick;
+		/**
+		 * The callback to run.
+		 */
+		private final Runnable callback;
+		/**
+		 * If the deadline was cancelled or has already run.
+		 */
+		private boolean cancelled = false;
+
+		private Deadline(long expiryTick, Runnable callback) {
+			this.expiryTick = expiryTick;
+			this.callback = callback;
+		}
+
+		/**
+		 * Cancels the deadline. It is dropped from the wheel when its slot is next visited.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,200 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.bukkitutils.nms.PlayerUtils;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a notification to many players spread over several server ticks. The recipients are picked once when the
+ * broadcast starts and at most the configured number of them are sent the notification each tick.
+ * Only used from the server thread.
+ */
+public class NotificationFanOut {
+
+	/**
+	 * The broadcasts waiting to be sent, the first being sent.
+	 */
+	private static final ArrayDeque<Broadcast> broadcasts = new ArrayDeque<>();
+	/**
+	 * The repeating task sending the broadcasts. null if nothing is being sent.
+	 */
+	private static BukkitTask sendTask = null;
+
+	/**
+	 * The number of broadcasts completed.
+	 */
+	private static long broadcastCount = 0;
+	/**
+	 * The number of recipients of the last completed broadcast.
+	 */
+	private static int lastRecipients = 0;
+	/**
+	 * The number of ticks the last completed broadcast was sent over.
+	 */
+	private static int lastTicks = 0;
+	/**
+	 * The time from the start to the end of the last completed broadcast, in nanoseconds.
+	 */
+	private static long lastDuration = 0;
+	/**
+	 * The time spent sending the last completed broadcast, in nanoseconds.
+	 */
+	private static long lastSendTime = 0;
+
+	/**
+	 * Queues the message to be sent on the action bar of the recipients.
+	 *
+	 * @param message The message to send.
+	 * @param recipients The players to send the message to.
+	 */
+	public static void broadcast(String message, List<Player> recipients) {
+		if (recipients.isEmpty()) {
+			return;
+		}
+
+		broadcasts.add(new Broadcast(message, recipients, System.nanoTime()));
+		if (sendTask == null) {
+			sendTask = new BukkitRunnable() {
+				@Override
+				public void run() {
+					sendNext();
+				}
+			}.runTaskTimer(Main.getInstance(), 0L, 1L);
+		}
+	}
+
+	/**
+	 * Stops sending, dropping the broadcasts not yet sent.
+	 */
+	public static void stop() {
+		if (sendTask != null) {
+			sendTask.cancel();
+			sendTask = null;
+		}
+
+		broadcasts.clear();
+	}
+
+	/**
+	 * Sends the next recipients within this tick's budget.
+	 */
+	private static void sendNext() {
+		int budget = Main.getInstance().getPluginConfig().VOTE_NOTIFICATION_SENDS_PER_TICK;
+		long durationTicks = Main.getInstance().getPluginConfig().VOTE_NOTIFICATION_DURATION * 20L;
+
+		Broadcast broadcast;
+		while (budget > 0 && (broadcast = broadcasts.peek()) != null) {
+			long start = System.nanoTime();
+			while (budget > 0 && broadcast.nextRecipient < broadcast.recipients.size()) {
+				Player player = broadcast.recipients.get(broadcast.nextRecipient++);
+				// The player may have left since the broadcast started
+				if (!player.isOnline()) {
+					continue;
+				}
+
+				try {
+					PlayerUtils.sendActionBarMessage(Main.getInstance(), player, broadcast.message, durationTicks);
+				} catch (Exception e) {
+					player.sendMessage(broadcast.message);
+				}
+				budget--;
+			}
+			broadcast.sendTime += System.nanoTime() - start;
+			broadcast.ticks++;
+
+			if (broadcast.nextRecipient < broadcast.recipients.size()) {
+				break;
+			}
+
+			broadcasts.poll();
+			complete(broadcast);
+		}
+
+		if (broadcasts.isEmpty()) {
+			sendTask.cancel();
+			sendTask = null;
+		}
+	}
+
+	/**
+	 * Records the statistics of a broadcast that was sent to every recipient.
+	 *
+	 * @param broadcast The completed broadcast.
+	 */
+	private static void complete(Broadcast broadcast) {
+		broadcastCount++;
+		lastRecipients = broadcast.recipients.size();
+		lastTicks = broadcast.ticks;
+		lastDuration = System.nanoTime() - broadcast.startTime;
+		lastSendTime = broadcast.sendTime;
+	}
+
+	public static long getBroadcastCount() {
+		return broadcastCount;
+	}
+
+	public static int getLastRecipients() {
+		return lastRecipients;
+	}
+
+	public static int getLastTicks() {
+		return lastTicks;
+	}
+
+	/**
+	 * Gets the time from the start to the end of the last completed broadcast.
+	 *
+	 * @return The duration in milliseconds.
+	 */
+	public static double getLastDurationMillis() {
+		return (double) lastDuration / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Gets the time spent on the server thread sending the last completed broadcast.
+	 *
+	 * @return The send time in milliseconds.
+	 */
+	public static double getLastSendMillis() {
+		return (double) lastSendTime / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * A message being sent to its recipients.
+	 */
+	private static class Broadcast {
+
+		private final String message;
+		private final List<Player> recipients;
+		/**
+		 * The System.nanoTime() the broadcast was queued at.
+		 */
+		private final long startTime;
+		/**
+		 * The index of the next recipient to send to.
+		 */
+		private int nextRecipient = 0;
+		/**
+		 * The number of ticks spent sending so far.
+		 */
+		private int ticks = 0;
+		/**
+		 * The time spent sending so far, in nanoseconds.
+		 */
+		private long sendTime = 0;
+
+		private Broadcast(String message, List<Player> recipients, long startTime) {
+			this.message = message;
+			this.recipients = recipients;
+			this.startTime = startTime;
+		}
+
+	}
+
+}
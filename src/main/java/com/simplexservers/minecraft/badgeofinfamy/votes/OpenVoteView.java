@@ -0,0 +1,106 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sorted views of the punished players up for pardon shown by the vote GUI.
+ * Each view is sorted once and reused until the punished players change or another vote opens. Vote openings are
+ * signalled by {@link PunishmentDeadlines}.
+ * Only used from the server thread.
+ */
+public class OpenVoteView {
+
+	/**
+	 * The orders the open votes can be sorted in.
+	 */
+	public enum SortOrder {
+
+		CLOSEST("Closest to pardon", Comparator.comparingInt(p -> p.getRequiredVotes() - p.getCurrentVotes())),
+		OLDEST("Oldest", Comparator.comparingLong(PunishedPlayer::getVoteOpenTime)),
+		NEWEST("Newest", Comparator.comparingLong(PunishedPlayer::getVoteOpenTime).reversed());
+
+		private final String displayName;
+		private final Comparator<PunishedPlayer> comparator;
+
+		SortOrder(String displayName, Comparator<PunishedPlayer> comparator) {
+			this.displayName = displayName;
+			this.comparator = comparator;
+		}
+
+		public String getDisplayName() {
+			return displayName;
+		}
+
+		/**
+		 * Gets the sort order after this one, wrapping around.
+		 *
+		 * @return The next sort order.
+		 */
+		public SortOrder next() {
+			return values()[(ordinal() + 1) % values().length];
+		}
+
+	}
+
+	/**
+	 * The cached view for each sort order.
+	 */
+	private static final Map<SortOrder, List<PunishedPlayer>> views = new EnumMap<>(SortOrder.class);
+
+	/**
+	 * Gets the punished players up for pardon in the sort order.
+	 *
+	 * @param order The sort order.
+	 * @return The read-only sorted view.
+	 */
+	public static List<PunishedPlayer> getSorted(SortOrder order) {
+		List<PunishedPlayer> view = views.get(order);
+		if (view == null) {
+			view = build(order);
+			views.put(order, view);
+		}
+
+		return view;
+	}
+
+	/**
+	 * Drops every cached view, after a player is punished or pardoned or a vote opens.
+	 */
+	public static void invalidate() {
+		views.clear();
+	}
+
+	/**
+	 * Drops the cached views ordered by votes, after votes are cast.
+	 */
+	public static void invalidateVoteOrder() {
+		views.remove(SortOrder.CLOSEST);
+	}
+
+	/**
+	 * Sorts the punished players up for pardon.
+	 *
+	 * @param order The sort order.
+	 * @return The read-only sorted view.
+	 */
+	private static List<PunishedPlayer> build(SortOrder order) {
+		List<PunishedPlayer> open = new ArrayList<>();
+		for (PunishedPlayer punishedPlayer : PunishManager.getPunishedPlayers()) {
+			if (punishedPlayer.isVoteOpen() && punishedPlayer.getCurrentVotes() < punishedPlayer.getRequiredVotes()) {
+				open.add(punishedPlayer);
+			}
+		}
+
+		open.sort(order.comparator);
+		return Collections.unmodifiableList(open);
+	}
+
+}
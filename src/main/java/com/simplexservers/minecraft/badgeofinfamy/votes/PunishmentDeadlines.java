@@ -0,0 +1,175 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.promptutils.ChatColor;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Owns every punishment related deadline: vote openings, mute expiries and vote notifications.
+ * All deadlines are kept in one timing wheel driven by a single repeating task. The wheel follows the wall clock, so
+ * deadlines are not delayed when the server lags. Only used from the server thread.
+ */
+public class PunishmentDeadlines {
+
+	/**
+	 * The number of milliseconds in a tick of the wheel.
+	 */
+	private static final long MILLIS_PER_TICK = 50L;
+
+	/**
+	 * The wheel holding the deadlines.
+	 */
+	private static final DeadlineWheel wheel = new DeadlineWheel();
+	/**
+	 * The epoch time in milliseconds of the wheel's tick zero.
+	 */
+	private static final long originMillis = System.currentTimeMillis();
+	/**
+	 * The vote opening and mute expiry deadlines of each punished player.
+	 */
+	private static final Map<UUID, DeadlineWheel.Deadline[]> playerDeadlines = new HashMap<>();
+	/**
+	 * The repeating task advancing the wheel. null if not started.
+	 */
+	private static BukkitTask task = null;
+
+	/**
+	 * Starts advancing the wheel every server tick.
+	 */
+	public static void start() {
+		if (task != null) {
+			return;
+		}
+
+		task = new BukkitRunnable() {
+			@Override
+			public void run() {
+				wheel.advanceTo((System.currentTimeMillis() - originMillis) / MILLIS_PER_TICK);
+			}
+		}.runTaskTimer(Main.getInstance(), 1L, 1L);
+	}
+
+	/**
+	 * Stops advancing the wheel.
+	 */
+	public static void stop() {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+	}
+
+	/**
+	 * Schedules the callback to run at the epoch time.
+	 *
+	 * @param epochMillis The epoch time in milliseconds to run the callback at.
+	 * @param callback The callback to run.
+	 * @return The scheduled deadline.
+	 */
+	public static DeadlineWheel.Deadline schedule(long epochMillis, Runnable callback) {
+		// Round up so the callback never runs before the epoch time
+		long tick = (epochMillis - originMillis + MILLIS_PER_TICK - 1) / MILLIS_PER_TICK;
+		return wheel.schedule(tick, callback);
+	}
+
+	/**
+	 * Schedules the vote opening and mute expiry of the punished player, replacing any previous deadlines.
+	 *
+	 * @param punishedPlayer The punished player.
+	 */
+	public static void track(PunishedPlayer punishedPlayer) {
+		untrack(punishedPlayer.getPlayerUUID());
+
+		DeadlineWheel.Deadline[] deadlines = new DeadlineWheel.Deadline[2];
+		if (!punishedPlayer.isVoteOpen()) {
+			deadlines[0] = schedule(punishedPlayer.getVoteOpenTime() * 1000L, () -> onVoteOpened(punishedPlayer));
+		}
+		if (!punishedPlayer.isAllowedToSpeak()) {
+			// The mute ends once the current second passes the speak time
+			deadlines[1] = schedule((punishedPlayer.getChatSpeakTime() + 1) * 1000L, () -> onMuteEnded(punishedPlayer));
+		}
+
+		if (deadlines[0] != null || deadlines[1] != null) {
+			playerDeadlines.put(punishedPlayer.getPlayerUUID(), deadlines);
+		}
+	}
+
+	/**
+	 * Schedules the deadlines of every punished player.
+	 *
+	 * @param punishedPlayers The punished players.
+	 */
+	public static void trackAll(Collection<PunishedPlayer> punishedPlayers) {
+		punishedPlayers.forEach(PunishmentDeadlines::track);
+	}
+
+	/**
+	 * Cancels the deadlines of the punished player, after they are pardoned.
+	 *
+	 * @param punishedUUID The UUID of the punished player.
+	 */
+	public static void untrack(UUID punishedUUID) {
+		DeadlineWheel.Deadline[] deadlines = playerDeadlines.remove(punishedUUID);
+		if (deadlines == null) {
+			return;
+		}
+
+		for (DeadlineWheel.Deadline deadline : deadlines) {
+			if (deadline != null) {
+				deadline.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Handles the punished player's pardon vote opening.
+	 *
+	 * @param punishedPlayer The punished player.
+	 */
+	private static void onVoteOpened(PunishedPlayer punishedPlayer) {
+		clearDeadline(punishedPlayer.getPlayerUUID(), 0);
+		OpenVoteView.invalidate();
+	}
+
+	/**
+	 * Handles the punished player's chat mute ending.
+	 *
+	 * @param punishedPlayer The punished player.
+	 */
+	private static void onMuteEnded(PunishedPlayer punishedPlayer) {
+		clearDeadline(punishedPlayer.getPlayerUUID(), 1);
+
+		Player player = Bukkit.getPlayer(punishedPlayer.getPlayerUUID());
+		if (player != null && player.isOnline()) {
+			player.sendMessage(ChatColor.GREEN + "Your chat mute has ended. You are allowed to speak in chat again.");
+		}
+	}
+
+	/**
+	 * Forgets a deadline of the punished player that has run.
+	 *
+	 * @param punishedUUID The UUID of the punished player.
+	 * @param index The index of the deadline.
+	 */
+	private static void clearDeadline(UUID punishedUUID, int index) {
+		DeadlineWheel.Deadline[] deadlines = playerDeadlines.get(punishedUUID);
+		if (deadlines == null) {
+			return;
+		}
+
+		deadlines[index] = null;
+		if (deadlines[0] == null && deadlines[1] == null) {
+			playerDeadlines.remove(punishedUUID);
+		}
+	}
+
+}
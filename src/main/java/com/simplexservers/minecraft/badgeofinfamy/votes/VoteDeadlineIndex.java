@@ -0,0 +1,92 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * An index of the punished players by the time their pardon vote opens, with a count of the votes already open.
+ * Kept up to date on punish and free so the vote timer never scans the punished players. Only used from the server
+ * thread.
+ */
+public class VoteDeadlineIndex {
+
+	/**
+	 * The punished players whose vote has not opened yet, soonest first.
+	 */
+	private static final TreeSet<PunishedPlayer> pending = new TreeSet<>(Comparator
+			.comparingLong(PunishedPlayer::getVoteOpenTime)
+			.thenComparing(PunishedPlayer::getPlayerUUID));
+	/**
+	 * The number of punished players whose vote is open.
+	 */
+	private static int openCount = 0;
+
+	/**
+	 * Adds the punished player to the index.
+	 *
+	 * @param punishedPlayer The punished player.
+	 */
+	public static void add(PunishedPlayer punishedPlayer) {
+		if (punishedPlayer.isVoteOpen()) {
+			openCount++;
+		} else {
+			pending.add(punishedPlayer);
+		}
+	}
+
+	/**
+	 * Removes the punished player from the index.
+	 *
+	 * @param punishedPlayer The punished player.
+	 */
+	public static void remove(PunishedPlayer punishedPlayer) {
+		if (!pending.remove(punishedPlayer)) {
+			openCount--;
+		}
+	}
+
+	/**
+	 * Rebuilds the index from the punished players.
+	 *
+	 * @param punishedPlayers Every punished player.
+	 */
+	public static void rebuild(Collection<PunishedPlayer> punishedPlayers) {
+		pending.clear();
+		openCount = 0;
+		punishedPlayers.forEach(VoteDeadlineIndex::add);
+	}
+
+	/**
+	 * Gets if any pardon vote is open.
+	 *
+	 * @return true if a vote is open.
+	 */
+	public static boolean hasOpenVotes() {
+		advance();
+		return openCount > 0;
+	}
+
+	/**
+	 * Gets the epoch time stamp for the next time a vote is opened.
+	 *
+	 * @return The next epoch time stamp for a new vote, -1 if no vote is pending.
+	 */
+	public static long getNextVoteOpenTime() {
+		advance();
+		return pending.isEmpty() ? -1 : pending.first().getVoteOpenTime();
+	}
+
+	/**
+	 * Moves the punished players whose vote has opened from the pending set to the open count.
+	 */
+	private static void advance() {
+		while (!pending.isEmpty() && pending.first().isVoteOpen()) {
+			pending.pollFirst();
+			openCount++;
+		}
+	}
+
+}
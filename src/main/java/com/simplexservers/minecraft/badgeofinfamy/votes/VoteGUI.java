@@ -1,7 +1,6 @@
 package com.simplexservers.minecraft.badgeofinfamy.votes;
 
 import com.simplexservers.minecraft.badgeofinfamy.Main;
-import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
 import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
 import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUI;
 import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUIEntry;
@@ -9,82 +8,291 @@ import com.simplexservers.minecraft.promptutils.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.SkullMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 public class VoteGUI {
 
 	public static final int LORE_MAX_CHARS_PER_LINE = 40;
 
-	public static InventoryGUI buildVoteGUI(Player player) {
-		Collection<PunishedPlayer> punishedPlayers = PunishManager.getPunishedPlayers();
-		punishedPlayers.removeIf(p -> !p.isVoteOpen());
+	/**
+	 * The prefix of the lore line showing the current votes.
+	 */
+	private static final String VOTES_LINE_PREFIX = ChatColor.YELLOW + "Votes: ";
+	/**
+	 * The prefix of the lore line shown when the viewer has already voted.
+	 */
+	private static final String VOTED_LINE_PREFIX = ChatColor.RED + "You have already voted for ";
 
-		if (punishedPlayers.size() == 0) {
-			return null;
+	/**
+	 * The number of punished players shown on each page.
+	 */
+	public static final int PAGE_SIZE = 45;
+
+	/**
+	 * The controls shown below the punished players, selected with the control as the entry value.
+	 */
+	public enum Control {
+		PREVIOUS, NEXT, SORT
+	}
+
+	/**
+	 * The page and sort order each player last viewed.
+	 */
+	private static final Map<UUID, PageState> pageStates = new HashMap<>();
+
+	/**
+	 * Opens the first page of the vote GUI for the player in their last sort order.
+	 *
+	 * @param player The player to open the GUI for.
+	 * @return true if the GUI was opened, false if no one is up for pardon.
+	 */
+	public static boolean openVoteGUI(Player player) {
+		PageState state = pageStates.computeIfAbsent(player.getUniqueId(), uuid -> new PageState());
+		state.page = 0;
+		return openPage(player, state);
+	}
+
+	/**
+	 * Handles the player selecting a control in their vote GUI.
+	 *
+	 * @param player The player viewing the GUI.
+	 * @param control The selected control.
+	 */
+	public static void handleControl(Player player, Control control) {
+		PageState state = pageStates.computeIfAbsent(player.getUniqueId(), uuid -> new PageState());
+		switch (control) {
+			case PREVIOUS:
+				state.page--;
+				break;
+			case NEXT:
+				state.page++;
+				break;
+			case SORT:
+				state.order = state.order.next();
+				state.page = 0;
+				break;
 		}
 
-		InventoryGUI.InventoryGUIBuilder guiBuilder = new InventoryGUI.InventoryGUIBuilder(Main.getInstance().getGUIManager(), "Up for Pardon");
-		punishedPlayers.forEach(punishedPlayer -> guiBuilder.addEntry(getPunishedPlayerEntry(player, punishedPlayer)));
-		return guiBuilder.build();
+		if (!openPage(player, state)) {
+			player.closeInventory();
+			player.sendMessage(ChatColor.RED + "No one is currently up for pardon. You'll be notified once a new vote is open.");
+		}
 	}
 
-	public static InventoryGUIEntry getPunishedPlayerEntry(Player player, PunishedPlayer punishedPlayer) {
-		if (punishedPlayer.getCurrentVotes() >= punishedPlayer.getRequiredVotes()) {
-			return null;
+	/**
+	 * Forgets the page the player last viewed, once they leave.
+	 *
+	 * @param uuid The UUID of the player.
+	 */
+	public static void removePageState(UUID uuid) {
+		pageStates.remove(uuid);
+	}
+
+	/**
+	 * Builds and opens the player's current page, subscribes it to updates of the punished players it shows and
+	 * prefetches the names on the adjacent pages.
+	 *
+	 * @param player The player to open the GUI for.
+	 * @param state The player's page state.
+	 * @return true if the GUI was opened, false if no one is up for pardon.
+	 */
+	private static boolean openPage(Player player, PageState state) {
+		List<PunishedPlayer> sorted = OpenVoteView.getSorted(state.order);
+		if (sorted.isEmpty()) {
+			return false;
 		}
 
-		// Build the player item
-		ItemStack stack = new ItemStack(Material.SKULL_ITEM, 1, (short) 3); // 3 for player skull type
-		SkullMeta meta = (SkullMeta) stack.getItemMeta();
+		int pageCount = (sorted.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+		state.page = Math.max(0, Math.min(state.page, pageCount - 1));
+
+		// Only the visible page is built
+		List<PunishedPlayer> page = getPage(sorted, state.page);
+		Set<UUID> votedFor = VoterIndex.getVotedFor(player.getUniqueId());
+		Map<UUID, ItemStack> items = new LinkedHashMap<>();
+		page.forEach(punishedPlayer -> {
+			ItemStack stack = buildPunishedPlayerItem(punishedPlayer, votedFor.contains(punishedPlayer.getPlayerUUID()));
+			if (stack != null) {
+				items.put(punishedPlayer.getPlayerUUID(), stack);
+			}
+		});
+
+		String title = "Up for Pardon" + (pageCount > 1 ? " (" + (state.page + 1) + "/" + pageCount + ")" : "");
+		InventoryGUI.InventoryGUIBuilder guiBuilder = new InventoryGUI.InventoryGUIBuilder(Main.getInstance().getGUIManager(), title);
+		items.forEach((uuid, stack) -> guiBuilder.addEntry(new InventoryGUIEntry(stack, uuid)));
+		if (state.page > 0) {
+			guiBuilder.addEntry(buildControlEntry(Control.PREVIOUS, Material.ARROW, "Previous Page"));
+		}
+		guiBuilder.addEntry(buildControlEntry(Control.SORT, Material.HOPPER, "Sort: " + state.order.getDisplayName()));
+		if (state.page < pageCount - 1) {
+			guiBuilder.addEntry(buildControlEntry(Control.NEXT, Material.ARROW, "Next Page"));
+		}
 
-		String username = Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
+		InventoryGUI gui = guiBuilder.build();
+		Main.getInstance().getGUIManager().openGUI(player, gui);
 
-		meta.setOwner(username);
-		meta.setDisplayName(username);
+		// Subscribe after opening, since opening closes the player's previous GUI
+		items.forEach((uuid, stack) -> {
+			for (int slot : gui.getSlotsWithValue(uuid)) {
+				VoteGUISubscriptions.subscribe(player, gui, slot, uuid, stack);
+			}
+		});
 
-		// Lore
-		List<String> lore = new ArrayList<>();
+		prefetchNames(sorted, state.page - 1, state.page + 1);
+		return true;
+	}
 
-		// Lore - already voted
-		if (punishedPlayer.hasVoted(player)) {
-			lore.add(ChatColor.RED + "You have already voted for " + username);
-			lore.add("");
+	/**
+	 * Gets the punished players on the page.
+	 *
+	 * @param sorted The sorted punished players up for pardon.
+	 * @param page The page index.
+	 * @return The punished players on the page, empty if the page does not exist.
+	 */
+	private static List<PunishedPlayer> getPage(List<PunishedPlayer> sorted, int page) {
+		if (page < 0 || page * PAGE_SIZE >= sorted.size()) {
+			return Collections.emptyList();
 		}
 
-		// Lore - reason
-		String reason = ChatColor.RED + username + " was punished for: " + ChatColor.WHITE + punishedPlayer.getReason();
-		String[] reasonWords = reason.split(" ");
+		return sorted.subList(page * PAGE_SIZE, Math.min(sorted.size(), (page + 1) * PAGE_SIZE));
+	}
 
-		int lastWordIndex = 0;
-		while (lastWordIndex < reasonWords.length) {
-			StringBuilder line = new StringBuilder();
+	/**
+	 * Resolves the names of the punished players on the pages in the background, so opening them does not wait on
+	 * name lookups.
+	 *
+	 * @param sorted The sorted punished players up for pardon.
+	 * @param pages The page indexes to prefetch.
+	 */
+	private static void prefetchNames(List<PunishedPlayer> sorted, int... pages) {
+		List<UUID> uuids = new ArrayList<>();
+		for (int page : pages) {
+			getPage(sorted, page).forEach(punishedPlayer -> uuids.add(punishedPlayer.getPlayerUUID()));
+		}
 
-			while (lastWordIndex < reasonWords.length && line.length() < LORE_MAX_CHARS_PER_LINE) {
-				if (line.length() > 0) {
-					line.append(' ');
-				}
+		if (uuids.isEmpty()) {
+			return;
+		}
 
-				line.append(reasonWords[lastWordIndex++]);
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				uuids.forEach(Main.getInstance().getNameResolver()::getUsername);
 			}
+		}.runTaskAsynchronously(Main.getInstance());
+	}
 
-			lore.add(ChatColor.WHITE + line.toString());
+	/**
+	 * Builds the entry for a control.
+	 *
+	 * @param control The control.
+	 * @param material The material of the control's item.
+	 * @param name The display name of the control.
+	 * @return The control entry.
+	 */
+	private static InventoryGUIEntry buildControlEntry(Control control, Material material, String name) {
+		ItemStack stack = new ItemStack(material, 1, (short) 0);
+		ItemMeta meta = stack.getItemMeta();
+		meta.setDisplayName(ChatColor.YELLOW + name);
+		stack.setItemMeta(meta);
+		return new InventoryGUIEntry(stack, control);
+	}
+
+	/**
+	 * Builds the item showing the punished player to a viewer.
+	 *
+	 * @param punishedPlayer The punished player shown.
+	 * @param voted If the viewer has already voted for the punished player.
+	 * @return The item, or null if the punished player already has the required votes.
+	 */
+	private static ItemStack buildPunishedPlayerItem(PunishedPlayer punishedPlayer, boolean voted) {
+		if (punishedPlayer.getCurrentVotes() >= punishedPlayer.getRequiredVotes()) {
+			return null;
+		}
+
+		// Copy the shared skull and add the viewer's lore
+		VoteItemCache.Template template = VoteItemCache.getTemplate(punishedPlayer);
+		ItemStack stack = template.copySkull();
+		ItemMeta meta = stack.getItemMeta();
+		String username = template.getUsername();
+
+		// Lore
+		List<String> lore = new ArrayList<>();
+
+		// Lore - already voted
+		if (voted) {
+			lore.add(VOTED_LINE_PREFIX + username);
+			lore.add("");
 		}
 
+		// Lore - reason
+		lore.addAll(template.getReasonLines());
+
 		lore.add("");
-		lore.add(ChatColor.YELLOW + "Votes: " + punishedPlayer.getCurrentVotes() + " out of " + punishedPlayer.getRequiredVotes());
+		lore.add(getVotesLine(punishedPlayer));
 		lore.add("");
 		lore.add(ChatColor.BLUE + "Click to pardon " + ChatColor.WHITE + username);
 		meta.setLore(lore);
 
 		stack.setItemMeta(meta);
+		return stack;
+	}
+
+	/**
+	 * Rewrites only the lore lines of the item that depend on the votes: the vote count and the already voted marker.
+	 *
+	 * @param lore The lore of the item, modified in place.
+	 * @param player The player viewing the item.
+	 * @param punishedPlayer The punished player shown.
+	 * @return true if a line changed, false if the lore is up to date.
+	 */
+	static boolean updateVoteLines(List<String> lore, Player player, PunishedPlayer punishedPlayer) {
+		boolean changed = false;
+
+		if (punishedPlayer.hasVoted(player) && (lore.isEmpty() || !lore.get(0).startsWith(VOTED_LINE_PREFIX))) {
+			lore.add(0, VOTED_LINE_PREFIX + VoteItemCache.getTemplate(punishedPlayer).getUsername());
+			lore.add(1, "");
+			changed = true;
+		}
+
+		// The vote line is always fourth from the end
+		int votesIndex = lore.size() - 4;
+		String votesLine = getVotesLine(punishedPlayer);
+		if (votesIndex >= 0 && !votesLine.equals(lore.get(votesIndex))) {
+			lore.set(votesIndex, votesLine);
+			changed = true;
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Gets the lore line showing the current votes of the punished player.
+	 *
+	 * @param punishedPlayer The punished player.
+	 * @return The votes lore line.
+	 */
+	private static String getVotesLine(PunishedPlayer punishedPlayer) {
+		return VOTES_LINE_PREFIX + punishedPlayer.getCurrentVotes() + " out of " + punishedPlayer.getRequiredVotes();
+	}
+
+	/**
+	 * The page and sort order a player is viewing.
+	 */
+	private static class PageState {
+
+		private int page = 0;
+		private OpenVoteView.SortOrder order = OpenVoteView.SortOrder.CLOSEST;
 
-		// Build the entry
-		InventoryGUIEntry entry = new InventoryGUIEntry(stack, punishedPlayer.getPlayerUUID());
-		return entry;
 	}
 
 }
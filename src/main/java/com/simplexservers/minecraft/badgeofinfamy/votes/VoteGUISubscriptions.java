@@ -0,0 +1,164 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUI;
+import com.simplexservers.minecraft.bukkitutils.gui.InventoryGUIEntry;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Tracks which open vote GUI slots show each punished player, so a vote only touches the GUI's showing the punished
+ * player voted for. Only used from the server thread.
+ */
+public class VoteGUISubscriptions {
+
+	/**
+	 * The subscriptions showing each punished player.
+	 */
+	private static final Map<UUID, List<Subscription>> byPunished = new HashMap<>();
+	/**
+	 * The subscriptions of each viewer.
+	 */
+	private static final Map<UUID, List<Subscription>> byViewer = new HashMap<>();
+
+	/**
+	 * Subscribes the GUI slot to updates of the punished player.
+	 *
+	 * @param viewer The player viewing the GUI.
+	 * @param gui The open GUI.
+	 * @param slot The slot showing the punished player.
+	 * @param punishedUUID The UUID of the punished player shown.
+	 * @param stack The item shown in the slot.
+	 */
+	public static void subscribe(Player viewer, InventoryGUI gui, int slot, UUID punishedUUID, ItemStack stack) {
+		Subscription subscription = new Subscription(viewer, gui, slot, punishedUUID, stack);
+		byPunished.computeIfAbsent(punishedUUID, uuid -> new ArrayList<>()).add(subscription);
+		byViewer.computeIfAbsent(viewer.getUniqueId(), uuid -> new ArrayList<>()).add(subscription);
+	}
+
+	/**
+	 * Removes every subscription of the viewer, after their GUI is closed or they leave.
+	 *
+	 * @param viewerUUID The UUID of the viewer.
+	 */
+	public static void unsubscribe(UUID viewerUUID) {
+		List<Subscription> subscriptions = byViewer.remove(viewerUUID);
+		if (subscriptions == null) {
+			return;
+		}
+
+		for (Subscription subscription : subscriptions) {
+			removeFrom(byPunished, subscription.punishedUUID, subscription);
+		}
+	}
+
+	/**
+	 * Updates the slots showing the punished players. Only the vote lore lines are rewritten, slots that are already
+	 * up to date are left alone, and each touched viewer's inventory is updated once.
+	 *
+	 * @param punishedPlayers The punished players whose votes changed.
+	 */
+	public static void refresh(Collection<PunishedPlayer> punishedPlayers) {
+		Set<Player> touchedViewers = new HashSet<>();
+
+		for (PunishedPlayer punishedPlayer : punishedPlayers) {
+			List<Subscription> subscriptions = byPunished.get(punishedPlayer.getPlayerUUID());
+			if (subscriptions == null) {
+				continue;
+			}
+
+			boolean pardoned = PunishManager.getPunishedPlayer(punishedPlayer.getPlayerUUID()) == null ||
+					punishedPlayer.getCurrentVotes() >= punishedPlayer.getRequiredVotes();
+
+			for (Subscription subscription : new ArrayList<>(subscriptions)) {
+				if (!subscription.viewer.isOnline()) {
+					continue;
+				}
+
+				if (pardoned) {
+					subscription.gui.removeEntry(subscription.slot);
+					removeFrom(byPunished, subscription.punishedUUID, subscription);
+					removeFrom(byViewer, subscription.viewer.getUniqueId(), subscription);
+					touchedViewers.add(subscription.viewer);
+					continue;
+				}
+
+				if (subscription.update(punishedPlayer)) {
+					touchedViewers.add(subscription.viewer);
+				}
+			}
+		}
+
+		touchedViewers.forEach(Player::updateInventory);
+	}
+
+	/**
+	 * Removes the subscription from the list under the key, dropping the list once empty.
+	 *
+	 * @param subscriptions The subscriptions map.
+	 * @param key The key of the list.
+	 * @param subscription The subscription to remove.
+	 */
+	private static void removeFrom(Map<UUID, List<Subscription>> subscriptions, UUID key, Subscription subscription) {
+		List<Subscription> list = subscriptions.get(key);
+		if (list != null && list.remove(subscription) && list.isEmpty()) {
+			subscriptions.remove(key);
+		}
+	}
+
+	/**
+	 * A GUI slot showing a punished player.
+	 */
+	private static class Subscription {
+
+		private final Player viewer;
+		private final InventoryGUI gui;
+		private final int slot;
+		private final UUID punishedUUID;
+		/**
+		 * The item currently shown in the slot.
+		 */
+		private ItemStack stack;
+
+		private Subscription(Player viewer, InventoryGUI gui, int slot, UUID punishedUUID, ItemStack stack) {
+			this.viewer = viewer;
+			this.gui = gui;
+			this.slot = slot;
+			this.punishedUUID = punishedUUID;
+			this.stack = stack;
+		}
+
+		/**
+		 * Rewrites the vote lore lines of the slot's item if they changed.
+		 *
+		 * @param punishedPlayer The punished player shown.
+		 * @return true if the slot was updated.
+		 */
+		private boolean update(PunishedPlayer punishedPlayer) {
+			ItemMeta meta = stack.getItemMeta();
+			List<String> lore = new ArrayList<>(meta.getLore());
+			if (!VoteGUI.updateVoteLines(lore, viewer, punishedPlayer)) {
+				return false;
+			}
+
+			meta.setLore(lore);
+			stack = stack.clone();
+			stack.setItemMeta(meta);
+			gui.updateEntry(slot, new InventoryGUIEntry(stack, punishedUUID));
+			return true;
+		}
+
+	}
+
+}
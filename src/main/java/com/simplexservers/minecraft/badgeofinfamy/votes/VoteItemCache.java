@@ -0,0 +1,130 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.BatchNameResolver;
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.promptutils.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.SkullMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of the parts of each punished player's vote GUI item that are the same for every viewer: the resolved
+ * username, the skull and the wrapped reason lore. The cache IS thread-safe.
+ */
+public class VoteItemCache {
+
+	/**
+	 * The cached template of each punished player.
+	 */
+	private static final ConcurrentHashMap<UUID, Template> templates = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the template of the punished player, building it if it is not cached.
+	 *
+	 * @param punishedPlayer The punished player.
+	 * @return The punished player's template.
+	 */
+	public static Template getTemplate(PunishedPlayer punishedPlayer) {
+		Template template = templates.get(punishedPlayer.getPlayerUUID());
+		// A new punishment replaces the PunishedPlayer, so a template for another instance is stale
+		if (template == null || template.punishedPlayer != punishedPlayer) {
+			template = new Template(punishedPlayer);
+			templates.put(punishedPlayer.getPlayerUUID(), template);
+		}
+
+		return template;
+	}
+
+	/**
+	 * Removes the punished player's template, after they are punished again or pardoned.
+	 *
+	 * @param punishedUUID The UUID of the punished player.
+	 */
+	public static void invalidate(UUID punishedUUID) {
+		templates.remove(punishedUUID);
+	}
+
+	/**
+	 * The viewer independent parts of a punished player's item.
+	 */
+	public static class Template {
+
+		/**
+		 * The punished player the template was built for.
+		 */
+		private final PunishedPlayer punishedPlayer;
+		/**
+		 * The resolved username of the punished player.
+		 */
+		private final String username;
+		/**
+		 * The skull item with the owner and display name set, without lore.
+		 */
+		private final ItemStack skull;
+		/**
+		 * The reason lore lines, wrapped.
+		 */
+		private final List<String> reasonLines;
+
+		private Template(PunishedPlayer punishedPlayer) {
+			this.punishedPlayer = punishedPlayer;
+			// Prefer the name warmed at startup over another name cache lookup
+			String cached = BatchNameResolver.getCached(punishedPlayer.getPlayerUUID());
+			this.username = cached != null ? cached : Main.getInstance().getNameResolver().getUsername(punishedPlayer.getPlayerUUID());
+
+			// Build the player item
+			skull = new ItemStack(Material.SKULL_ITEM, 1, (short) 3); // 3 for player skull type
+			SkullMeta meta = (SkullMeta) skull.getItemMeta();
+			meta.setOwner(username);
+			meta.setDisplayName(username);
+			skull.setItemMeta(meta);
+
+			// Lore - reason
+			List<String> lines = new ArrayList<>();
+			String reason = ChatColor.RED + username + " was punished for: " + ChatColor.WHITE + punishedPlayer.getReason();
+			String[] reasonWords = reason.split(" ");
+
+			int lastWordIndex = 0;
+			while (lastWordIndex < reasonWords.length) {
+				StringBuilder line = new StringBuilder();
+
+				while (lastWordIndex < reasonWords.length && line.length() < VoteGUI.LORE_MAX_CHARS_PER_LINE) {
+					if (line.length() > 0) {
+						line.append(' ');
+					}
+
+					line.append(reasonWords[lastWordIndex++]);
+				}
+
+				lines.add(ChatColor.WHITE + line.toString());
+			}
+			reasonLines = Collections.unmodifiableList(lines);
+		}
+
+		public String getUsername() {
+			return username;
+		}
+
+		/**
+		 * Gets a copy of the skull item to add the viewer's lore to.
+		 *
+		 * @return A copy of the skull item.
+		 */
+		public ItemStack copySkull() {
+			return skull.clone();
+		}
+
+		public List<String> getReasonLines() {
+			return reasonLines;
+		}
+
+	}
+
+}
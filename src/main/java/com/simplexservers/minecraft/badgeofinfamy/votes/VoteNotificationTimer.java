@@ -3,12 +3,12 @@ package com.simplexservers.minecraft.badgeofinfamy.votes;
 import com.simplexservers.minecraft.badgeofinfamy.Main;
 import com.simplexservers.minecraft.badgeofinfamy.PlayerSettings;
 import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
-import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
-import com.simplexservers.minecraft.bukkitutils.nms.PlayerUtils;
 import com.simplexservers.minecraft.promptutils.ChatColor;
 import org.bukkit.Bukkit;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.scheduler.BukkitTask;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class VoteNotificationTimer {
 
@@ -17,9 +17,9 @@ public class VoteNotificationTimer {
 	 */
 	private static long nextNotificationTime = -1;
 	/**
-	 * The task to send the notification.
+	 * The deadline to send the notification at.
 	 */
-	private static BukkitTask notificationTask = null;
+	private static DeadlineWheel.Deadline notificationDeadline = null;
 
 	/**
 	 * The task to run when a notification should be sent.
@@ -30,19 +30,16 @@ public class VoteNotificationTimer {
 			return;
 		}
 
-		// Notify the online players
+		// Notify the online players, spread over several ticks
 		String message = ChatColor.YELLOW + "There are open votes to pardon " + Main.getInstance().getPluginConfig().PUNISHED_GROUP +
 				"s! Vote now with " + ChatColor.WHITE + "/pardon";
-		Bukkit.getOnlinePlayers().parallelStream()
-				.filter(player -> PunishManager.getPunishedPlayer(player) == null)
-				.filter(player -> PlayerSettings.getPlayerSettings(player).showVoteNotification())
-				.forEach(player -> {
-					try {
-						PlayerUtils.sendActionBarMessage(Main.getInstance(), player, message, Main.getInstance().getPluginConfig().VOTE_NOTIFICATION_DURATION * 20L);
-					} catch (Exception e) {
-						player.sendMessage(message);
-					}
-				});
+		List<Player> recipients = new ArrayList<>();
+		for (Player player : Bukkit.getOnlinePlayers()) {
+			if (PunishManager.getPunishedPlayer(player) == null && PlayerSettings.showVoteNotification(player.getUniqueId())) {
+				recipients.add(player);
+			}
+		}
+		NotificationFanOut.broadcast(message, recipients);
 
 		// Reset the notification task
 		cancelNotification();
@@ -55,11 +52,11 @@ public class VoteNotificationTimer {
 	 * Cancels/unschedules the notification task from running.
 	 */
 	public static void cancelNotification() {
-		if (notificationTask != null) {
-			notificationTask.cancel();
+		if (notificationDeadline != null) {
+			notificationDeadline.cancel();
 		}
 
-		notificationTask = null;
+		notificationDeadline = null;
 		nextNotificationTime = -1;
 	}
 
@@ -90,13 +87,7 @@ public class VoteNotificationTimer {
 		}
 
 		VoteNotificationTimer.nextNotificationTime = nextNotificationTime;
-		long secondsFromNow = nextNotificationTime - System.currentTimeMillis() / 1000L;
-		notificationTask = new BukkitRunnable() {
-			@Override
-			public void run() {
-				notificationRunnable.run();
-			}
-		}.runTaskLater(Main.getInstance(), secondsFromNow * 20L);
+		notificationDeadline = PunishmentDeadlines.schedule(nextNotificationTime * 1000L, notificationRunnable);
 	}
 
 	/**
@@ -120,13 +111,7 @@ public class VoteNotificationTimer {
 	}
 
 	public static boolean hasOpenVotes() {
-		for (PunishedPlayer player : PunishManager.getPunishedPlayers()) {
-			if (player.isVoteOpen()) {
-				return true;
-			}
-		}
-
-		return false;
+		return VoteDeadlineIndex.hasOpenVotes();
 	}
 
 	/**
@@ -135,15 +120,7 @@ public class VoteNotificationTimer {
 	 * @return The next epoch time stamp for a new vote.
 	 */
 	public static long getNextVoteOpenTime() {
-		long currentTime = System.currentTimeMillis() / 1000L;
-		long nextVoteOpenTime = -1;
-		for (PunishedPlayer player : PunishManager.getPunishedPlayers()) {
-			if (currentTime < player.getVoteOpenTime() && (nextVoteOpenTime == -1 || nextVoteOpenTime > player.getVoteOpenTime())) {
-				nextVoteOpenTime = player.getVoteOpenTime();
-			}
-		}
-
-		return nextVoteOpenTime;
+		return VoteDeadlineIndex.getNextVoteOpenTime();
 	}
 
 }
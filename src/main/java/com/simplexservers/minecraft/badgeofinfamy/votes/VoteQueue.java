@@ -0,0 +1,184 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.Main;
+import com.simplexservers.minecraft.badgeofinfamy.PunishManager;
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import com.simplexservers.minecraft.promptutils.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues pardon votes and processes them once per server tick as a batch.
+ * Votes for the same punished player are counted together, so each batch evaluates the vote threshold once per
+ * punished player and refreshes the open GUI's once. Only used from the server thread.
+ */
+public class VoteQueue {
+
+	/**
+	 * The votes waiting to be processed.
+	 */
+	private static final ArrayDeque<PendingVote> queue = new ArrayDeque<>();
+	/**
+	 * The repeating task draining the queue. null if not started.
+	 */
+	private static BukkitTask drainTask = null;
+
+	/**
+	 * The number of batches processed.
+	 */
+	private static long batchCount = 0;
+	/**
+	 * The number of votes processed.
+	 */
+	private static long voteCount = 0;
+	/**
+	 * The largest number of votes processed in one batch.
+	 */
+	private static int maxBatchSize = 0;
+	/**
+	 * The total time votes waited in the queue, in nanoseconds.
+	 */
+	private static long totalLatency = 0;
+	/**
+	 * The longest time a vote waited in the queue, in nanoseconds.
+	 */
+	private static long maxLatency = 0;
+
+	/**
+	 * Queues the player's vote to pardon the punished player.
+	 *
+	 * @param punishedUUID The UUID of the punished player being voted for.
+	 * @param voter The player voting for the punished player to be pardoned.
+	 */
+	public static void submit(UUID punishedUUID, Player voter) {
+		queue.add(new PendingVote(punishedUUID, voter, System.nanoTime()));
+	}
+
+	/**
+	 * Starts draining the queue every tick.
+	 */
+	public static void start() {
+		if (drainTask != null) {
+			return;
+		}
+
+		drainTask = new BukkitRunnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}.runTaskTimer(Main.getInstance(), 1L, 1L);
+	}
+
+	/**
+	 * Stops draining the queue and processes the votes still queued.
+	 */
+	public static void stop() {
+		if (drainTask != null) {
+			drainTask.cancel();
+			drainTask = null;
+		}
+
+		drain();
+	}
+
+	/**
+	 * Processes every queued vote as one batch.
+	 */
+	public static void drain() {
+		if (queue.isEmpty()) {
+			return;
+		}
+
+		// Group the votes by punished player, keeping the order they were cast in
+		long now = System.nanoTime();
+		int batchSize = queue.size();
+		Map<UUID, List<Player>> votes = new LinkedHashMap<>();
+		PendingVote vote;
+		while ((vote = queue.poll()) != null) {
+			votes.computeIfAbsent(vote.punishedUUID, uuid -> new ArrayList<>()).add(vote.voter);
+
+			long latency = now - vote.submitTime;
+			totalLatency += latency;
+			maxLatency = Math.max(maxLatency, latency);
+		}
+
+		List<PunishedPlayer> votedFor = new ArrayList<>();
+		for (Map.Entry<UUID, List<Player>> entry : votes.entrySet()) {
+			PunishedPlayer punishedPlayer = PunishManager.getPunishedPlayer(entry.getKey());
+			if (punishedPlayer == null) {
+				entry.getValue().forEach(voter -> voter.sendMessage(ChatColor.GREEN + "That player has just been pardoned."));
+				continue;
+			}
+
+			PunishManager.playerPardonVotes(punishedPlayer, entry.getValue());
+			votedFor.add(punishedPlayer);
+		}
+
+		PunishManager.refreshOpenGUIs(votedFor);
+
+		batchCount++;
+		voteCount += batchSize;
+		maxBatchSize = Math.max(maxBatchSize, batchSize);
+	}
+
+	public static long getBatchCount() {
+		return batchCount;
+	}
+
+	public static long getVoteCount() {
+		return voteCount;
+	}
+
+	public static int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Gets the average time votes waited in the queue.
+	 *
+	 * @return The average latency in milliseconds.
+	 */
+	public static double getAverageLatencyMillis() {
+		return voteCount == 0 ? 0 : (double) totalLatency / voteCount / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Gets the longest time a vote waited in the queue.
+	 *
+	 * @return The maximum latency in milliseconds.
+	 */
+	public static double getMaxLatencyMillis() {
+		return (double) maxLatency / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * A vote waiting to be processed.
+	 */
+	private static class PendingVote {
+
+		private final UUID punishedUUID;
+		private final Player voter;
+		/**
+		 * The System.nanoTime() the vote was queued at.
+		 */
+		private final long submitTime;
+
+		private PendingVote(UUID punishedUUID, Player voter, long submitTime) {
+			this.punishedUUID = punishedUUID;
+			this.voter = voter;
+			this.submitTime = submitTime;
+		}
+
+	}
+
+}
@@ -0,0 +1,131 @@
+package com.simplexservers.minecraft.badgeofinfamy.votes;
+
+import com.simplexservers.minecraft.badgeofinfamy.PunishedPlayer;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The reverse of the punished players' votes: the punished players each voter has voted to pardon.
+ * Voters who are online are kept with their entry, so pardon notifications reach them without looking anyone up.
+ * Only used from the server thread.
+ */
+public class VoterIndex {
+
+	/**
+	 * The entry of each voter with an open vote.
+	 */
+	private static final Map<UUID, Voter> voters = new HashMap<>();
+
+	/**
+	 * Records the voter's vote for the punished player.
+	 *
+	 * @param voterUUID The UUID of the voter.
+	 * @param punishedUUID The UUID of the punished player voted for.
+	 */
+	public static void add(UUID voterUUID, UUID punishedUUID) {
+		voters.computeIfAbsent(voterUUID, Voter::new).votedFor.add(punishedUUID);
+	}
+
+	/**
+	 * Removes the votes for the punished player, after they are pardoned or punished again.
+	 *
+	 * @param punishedPlayer The punished player.
+	 * @return The voters for the punished player who are online.
+	 */
+	public static List<Player> remove(PunishedPlayer punishedPlayer) {
+		List<Player> online = new ArrayList<>();
+		for (UUID voterUUID : punishedPlayer.getVoters()) {
+			Voter voter = voters.get(voterUUID);
+			if (voter == null) {
+				continue;
+			}
+
+			voter.votedFor.remove(punishedPlayer.getPlayerUUID());
+			if (voter.player != null) {
+				online.add(voter.player);
+			}
+			if (voter.votedFor.isEmpty()) {
+				voters.remove(voterUUID);
+			}
+		}
+
+		return online;
+	}
+
+	/**
+	 * Rebuilds the index from the votes of the punished players.
+	 *
+	 * @param punishedPlayers The punished players.
+	 */
+	public static void rebuild(Collection<PunishedPlayer> punishedPlayers) {
+		voters.clear();
+		punishedPlayers.forEach(punishedPlayer ->
+				punishedPlayer.getVoters().forEach(voterUUID -> add(voterUUID, punishedPlayer.getPlayerUUID())));
+	}
+
+	/**
+	 * Gets the punished players the voter has voted to pardon.
+	 *
+	 * @param voterUUID The UUID of the voter.
+	 * @return A read-only view of the punished player UUID's, empty if they have not voted.
+	 */
+	public static Set<UUID> getVotedFor(UUID voterUUID) {
+		Voter voter = voters.get(voterUUID);
+		return voter != null ? Collections.unmodifiableSet(voter.votedFor) : Collections.emptySet();
+	}
+
+	/**
+	 * Marks the voter as online, after they join.
+	 *
+	 * @param player The player who joined.
+	 */
+	public static void setOnline(Player player) {
+		Voter voter = voters.get(player.getUniqueId());
+		if (voter != null) {
+			voter.player = player;
+		}
+	}
+
+	/**
+	 * Marks the voter as offline, once they leave.
+	 *
+	 * @param voterUUID The UUID of the player who left.
+	 */
+	public static void setOffline(UUID voterUUID) {
+		Voter voter = voters.get(voterUUID);
+		if (voter != null) {
+			voter.player = null;
+		}
+	}
+
+	/**
+	 * A player who has voted.
+	 */
+	private static class Voter {
+
+		/**
+		 * The UUID's of the punished players voted for.
+		 */
+		private final Set<UUID> votedFor = new HashSet<>();
+		/**
+		 * The player if they are online, otherwise null.
+		 */
+		private Player player;
+
+		private Voter(UUID uuid) {
+			this.player = Bukkit.getPlayer(uuid);
+		}
+
+	}
+
+}